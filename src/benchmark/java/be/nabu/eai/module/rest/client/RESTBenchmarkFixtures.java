@@ -0,0 +1,218 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import be.nabu.eai.module.rest.WebMethod;
+import be.nabu.eai.module.rest.WebResponseType;
+import be.nabu.libs.http.api.client.HTTPClient;
+import be.nabu.libs.http.client.DefaultHTTPClient;
+import be.nabu.libs.http.client.SPIAuthenticationHandler;
+import be.nabu.libs.http.client.connections.PooledConnectionHandler;
+import be.nabu.libs.services.api.ExecutionContext;
+import be.nabu.libs.types.SimpleTypeWrapperFactory;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.ComplexType;
+import be.nabu.libs.types.base.ComplexElementImpl;
+import be.nabu.libs.types.base.SimpleElementImpl;
+import be.nabu.libs.types.base.ValueImpl;
+import be.nabu.libs.types.binding.api.MarshallableBinding;
+import be.nabu.libs.types.properties.MaxOccursProperty;
+import be.nabu.libs.types.properties.MinOccursProperty;
+import be.nabu.libs.types.structure.DefinedStructure;
+
+/**
+ * The types, content and artifacts shared by the benchmarks, they are built in memory so no repository is needed.
+ */
+public class RESTBenchmarkFixtures {
+
+	/**
+	 * The http client implementation the platform uses, with keep-alive connections and without cookies
+	 */
+	public static HTTPClient newHttpClient() {
+		return new DefaultHTTPClient(new PooledConnectionHandler(null, 16), new SPIAuthenticationHandler(), new CookieManager(null, CookiePolicy.ACCEPT_NONE), false);
+	}
+	
+	/**
+	 * An order with a number of lines, representative for the structures that are typically exchanged
+	 */
+	public static DefinedStructure newOrderType() {
+		DefinedStructure line = new DefinedStructure();
+		line.setName("line");
+		line.setId("benchmark.line");
+		line.add(new SimpleElementImpl<String>("sku", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), line));
+		line.add(new SimpleElementImpl<String>("description", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), line, new ValueImpl<Integer>(MinOccursProperty.getInstance(), 0)));
+		line.add(new SimpleElementImpl<Integer>("quantity", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(Integer.class), line));
+		line.add(new SimpleElementImpl<Double>("price", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(Double.class), line));
+		
+		DefinedStructure order = new DefinedStructure();
+		order.setName("order");
+		order.setId("benchmark.order");
+		order.add(new SimpleElementImpl<String>("id", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), order));
+		order.add(new SimpleElementImpl<String>("customer", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), order));
+		order.add(new SimpleElementImpl<Date>("created", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(Date.class), order));
+		order.add(new SimpleElementImpl<Double>("total", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(Double.class), order));
+		order.add(new SimpleElementImpl<String>("tags", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), order, new ValueImpl<Integer>(MinOccursProperty.getInstance(), 0), new ValueImpl<Integer>(MaxOccursProperty.getInstance(), 0)));
+		order.add(new ComplexElementImpl("lines", line, order, new ValueImpl<Integer>(MinOccursProperty.getInstance(), 0), new ValueImpl<Integer>(MaxOccursProperty.getInstance(), 0)));
+		return order;
+	}
+	
+	public static ComplexContent newOrder(ComplexType type, int lines) {
+		ComplexContent order = type.newInstance();
+		order.set("id", "ORD-2024-000042");
+		order.set("customer", "Alexander & S\u00f6hne <purchasing>");
+		order.set("created", new Date(1700000000000l));
+		order.set("tags", Arrays.asList("priority", "export", "invoice-later"));
+		ComplexType lineType = (ComplexType) type.get("lines").getType();
+		List<ComplexContent> list = new ArrayList<ComplexContent>(lines);
+		double total = 0;
+		for (int i = 0; i < lines; i++) {
+			ComplexContent line = lineType.newInstance();
+			line.set("sku", "SKU-" + (100000 + i));
+			line.set("description", "Item number " + i + " with a reasonably long description");
+			line.set("quantity", 1 + (i % 7));
+			line.set("price", 9.99 + i);
+			total += (1 + (i % 7)) * (9.99 + i);
+			list.add(line);
+		}
+		order.set("lines", list);
+		order.set("total", total);
+		return order;
+	}
+	
+	public static byte[] marshal(RESTBindingCache bindings, WebResponseType kind, ComplexContent content) throws IOException {
+		RESTBufferOutputStream output = new RESTBufferOutputStream(RESTBufferPool.getInstance());
+		try {
+			RESTBindingCache.Lease lease = bindings.borrowMarshaller(kind, content.getType(), null, 0);
+			try {
+				lease.<MarshallableBinding>getBinding().marshal(output, content);
+			}
+			finally {
+				lease.close();
+			}
+			byte [] bytes = new byte[output.size()];
+			int read = 0;
+			InputStream input = output.toInputStream();
+			while (read < bytes.length) {
+				read += input.read(bytes, read, bytes.length - read);
+			}
+			return bytes;
+		}
+		finally {
+			output.release();
+		}
+	}
+	
+	/**
+	 * The configuration of a rest client that is not loaded from a repository
+	 */
+	public static class Configuration extends RESTClientConfiguration {
+		private String path, queryParameters, requestHeaders, responseHeaders;
+		private WebMethod method;
+		private DefinedStructure input, output;
+		
+		public Configuration(WebMethod method, String path) {
+			this.method = method;
+			this.path = path;
+		}
+		
+		@Override
+		public String getPath() {
+			return path;
+		}
+		@Override
+		public WebMethod getMethod() {
+			return method;
+		}
+		@Override
+		public DefinedStructure getInput() {
+			return input;
+		}
+		public Configuration input(DefinedStructure input) {
+			this.input = input;
+			return this;
+		}
+		@Override
+		public DefinedStructure getOutput() {
+			return output;
+		}
+		public Configuration output(DefinedStructure output) {
+			this.output = output;
+			return this;
+		}
+		@Override
+		public String getQueryParameters() {
+			return queryParameters;
+		}
+		public Configuration queryParameters(String queryParameters) {
+			this.queryParameters = queryParameters;
+			return this;
+		}
+		@Override
+		public String getRequestHeaders() {
+			return requestHeaders;
+		}
+		public Configuration requestHeaders(String requestHeaders) {
+			this.requestHeaders = requestHeaders;
+			return this;
+		}
+		@Override
+		public String getResponseHeaders() {
+			return responseHeaders;
+		}
+		public Configuration responseHeaders(String responseHeaders) {
+			this.responseHeaders = responseHeaders;
+			return this;
+		}
+	}
+	
+	/**
+	 * A rest client with a fixed configuration that sends its requests with the given client instead of the one from the repository
+	 */
+	public static class Artifact extends RESTClientArtifact {
+		private Configuration configuration;
+		private HTTPClient client;
+
+		public Artifact(String id, Configuration configuration, HTTPClient client) {
+			super(id, null, null);
+			this.configuration = configuration;
+			this.client = client;
+		}
+		@Override
+		public RESTClientConfiguration getConfig() {
+			return configuration;
+		}
+		@Override
+		public RESTClientConfiguration getConfiguration() {
+			return configuration;
+		}
+		@Override
+		HTTPClient getHttpClient(ExecutionContext executionContext, String transactionId, RESTClientPlan plan) {
+			return client;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.nabu.eai.module.rest.WebResponseType;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.ComplexType;
+import be.nabu.libs.types.binding.api.MarshallableBinding;
+import be.nabu.libs.types.binding.api.UnmarshallableBinding;
+import be.nabu.libs.types.binding.api.Window;
+
+/**
+ * Marshalling and unmarshalling of a representative structure, with and without gzip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RESTBindingBenchmark {
+
+	@Param({ "JSON", "XML" })
+	private WebResponseType format;
+	
+	@Param({ "1", "100" })
+	private int lines;
+	
+	private RESTBindingCache bindings = new RESTBindingCache();
+	private ComplexType type;
+	private ComplexContent order;
+	private byte [] marshalled, gzipped;
+	
+	@Setup
+	public void setup() throws IOException {
+		type = RESTBenchmarkFixtures.newOrderType();
+		order = RESTBenchmarkFixtures.newOrder(type, lines);
+		marshalled = RESTBenchmarkFixtures.marshal(bindings, format, order);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(output);
+		gzip.write(marshalled);
+		gzip.close();
+		gzipped = output.toByteArray();
+	}
+	
+	@Benchmark
+	public int marshal() throws IOException {
+		RESTBufferOutputStream output = new RESTBufferOutputStream(RESTBufferPool.getInstance());
+		try {
+			marshal(output);
+			return output.size();
+		}
+		finally {
+			output.release();
+		}
+	}
+	
+	@Benchmark
+	public int marshalGzip() throws IOException {
+		RESTBufferOutputStream output = new RESTBufferOutputStream(RESTBufferPool.getInstance());
+		try {
+			GZIPOutputStream gzip = new GZIPOutputStream(output, 8192);
+			marshal(gzip);
+			gzip.finish();
+			return output.size();
+		}
+		finally {
+			output.release();
+		}
+	}
+	
+	@Benchmark
+	public ComplexContent unmarshal() throws IOException, ParseException {
+		return unmarshal(new ByteArrayInputStream(marshalled));
+	}
+	
+	@Benchmark
+	public ComplexContent unmarshalGzip() throws IOException, ParseException {
+		return unmarshal(new GZIPInputStream(new ByteArrayInputStream(gzipped), 8192));
+	}
+	
+	private void marshal(OutputStream output) throws IOException {
+		RESTBindingCache.Lease lease = bindings.borrowMarshaller(format, type, null, 0);
+		try {
+			lease.<MarshallableBinding>getBinding().marshal(output, order);
+		}
+		finally {
+			lease.close();
+		}
+	}
+	
+	private ComplexContent unmarshal(InputStream input) throws IOException, ParseException {
+		RESTBindingCache.Lease lease = bindings.borrowUnmarshaller(format, type, null, 0);
+		try {
+			return lease.<UnmarshallableBinding>getBinding().unmarshal(input, new Window[0]);
+		}
+		finally {
+			lease.close();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.nabu.eai.module.rest.WebMethod;
+import be.nabu.eai.module.rest.WebResponseType;
+import be.nabu.libs.http.api.client.HTTPClient;
+import be.nabu.libs.services.api.ServiceException;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.structure.DefinedStructure;
+
+/**
+ * Runs the rest client end-to-end (request building, marshalling, sending, unmarshalling) with the platform http client against a loopback server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RESTClientBenchmark {
+
+	@Param({ "JSON", "XML" })
+	private WebResponseType format;
+	
+	@Param({ "false", "true" })
+	private boolean gzip;
+	
+	@Param({ "20" })
+	private int lines;
+	
+	private RESTLoopbackServer server;
+	private HTTPClient client;
+	private RESTClientArtifact getClient, postClient;
+	private ComplexContent getInput, postInput;
+	
+	@Setup
+	public void setup() throws IOException {
+		DefinedStructure orderType = RESTBenchmarkFixtures.newOrderType();
+		ComplexContent order = RESTBenchmarkFixtures.newOrder(orderType, lines);
+		server = new RESTLoopbackServer(format.getMimeType(), RESTBenchmarkFixtures.marshal(new RESTBindingCache(), format, order));
+		client = RESTBenchmarkFixtures.newHttpClient();
+		
+		RESTBenchmarkFixtures.Configuration getConfiguration = new RESTBenchmarkFixtures.Configuration(WebMethod.GET, "/customers/{customerId}/orders/{orderId}")
+			.queryParameters("expand, fields")
+			.requestHeaders("X-Correlation-Id, X-Tenant")
+			.output(orderType);
+		configure(getConfiguration);
+		getClient = new RESTBenchmarkFixtures.Artifact("benchmark.get", getConfiguration, client);
+		getInput = getClient.getServiceInterface().getInputDefinition().newInstance();
+		getInput.set("path/customerId", "C-100042");
+		getInput.set("path/orderId", "ORD-2024-000042");
+		getInput.set("query/expand", "lines");
+		getInput.set("query/fields", "id,customer,lines");
+		getInput.set("header/xCorrelationId", "3f9c1b6e-8a43-4c57-9d0e-1f2a3b4c5d6e");
+		getInput.set("header/xTenant", "benchmark");
+		
+		RESTBenchmarkFixtures.Configuration postConfiguration = new RESTBenchmarkFixtures.Configuration(WebMethod.POST, "/orders")
+			.input(orderType)
+			.output(orderType);
+		configure(postConfiguration);
+		postClient = new RESTBenchmarkFixtures.Artifact("benchmark.post", postConfiguration, client);
+		postInput = postClient.getServiceInterface().getInputDefinition().newInstance();
+		postInput.set("content", order);
+	}
+	
+	private void configure(RESTClientConfiguration configuration) {
+		configuration.setHost("127.0.0.1:" + server.getPort());
+		configuration.setRequestType(format);
+		configuration.setResponseType(format);
+		configuration.setGzip(gzip);
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		if (client instanceof Closeable) {
+			((Closeable) client).close();
+		}
+		server.close();
+	}
+	
+	@Benchmark
+	public ComplexContent get() throws ServiceException {
+		return getClient.newInstance().execute(null, getInput);
+	}
+	
+	@Benchmark
+	public ComplexContent post() throws ServiceException {
+		return postClient.newInstance().execute(null, postInput);
+	}
+}
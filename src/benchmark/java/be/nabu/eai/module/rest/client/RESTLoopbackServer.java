@@ -0,0 +1,103 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process http server on the loopback interface that answers every request with the same canned response.
+ * The response is gzipped (once, up front) if the client accepts it.
+ */
+public class RESTLoopbackServer implements Closeable {
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private byte [] body, gzipped;
+	private String contentType;
+
+	public RESTLoopbackServer(String contentType, byte [] body) throws IOException {
+		this.contentType = contentType;
+		this.body = body;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(output);
+		gzip.write(body);
+		gzip.close();
+		this.gzipped = output.toByteArray();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange);
+			}
+		});
+		executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+		server.setExecutor(executor);
+		server.start();
+	}
+	
+	private void respond(HttpExchange exchange) throws IOException {
+		try {
+			// drain the request so the connection can be reused
+			InputStream input = exchange.getRequestBody();
+			byte [] bytes = new byte[8192];
+			while (input.read(bytes) >= 0) {
+				// discard
+			}
+			input.close();
+			byte [] response = body;
+			List<String> accept = exchange.getRequestHeaders().get("Accept-Encoding");
+			if (accept != null && accept.toString().contains("gzip")) {
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				response = gzipped;
+			}
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(200, response.length);
+			OutputStream output = exchange.getResponseBody();
+			output.write(response);
+			output.close();
+		}
+		finally {
+			exchange.close();
+		}
+	}
+	
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,105 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.nabu.eai.module.rest.WebMethod;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.utils.mime.api.ModifiablePart;
+import be.nabu.utils.mime.impl.MimeHeader;
+import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
+
+/**
+ * The parts of building a request that do not depend on the content: the path, the query and the headers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RESTRequestBenchmark {
+
+	private RESTClientPlan plan;
+	private ComplexContent path, query, header;
+	
+	@Setup
+	public void setup() {
+		RESTBenchmarkFixtures.Configuration configuration = new RESTBenchmarkFixtures.Configuration(WebMethod.GET, "/customers/{customerId}/orders/{orderId}/lines")
+			.queryParameters("page, size, sort, filter, tag")
+			.requestHeaders("X-Correlation-Id, X-Tenant, Accept-Language, If-None-Match");
+		configuration.setHost("api.example.com");
+		RESTClientArtifact artifact = new RESTBenchmarkFixtures.Artifact("benchmark.request", configuration, null);
+		ComplexContent input = artifact.getServiceInterface().getInputDefinition().newInstance();
+		plan = artifact.getPlan();
+		input.set("path/customerId", "C-100042");
+		input.set("path/orderId", "ORD 2024/000042");
+		input.set("query/page", "3");
+		input.set("query/size", "50");
+		input.set("query/sort", "created,desc");
+		input.set("query/filter", "status eq 'open' & total gt 100");
+		input.set("query/tag[0]", "priority");
+		input.set("query/tag[1]", "export");
+		input.set("header/xCorrelationId", "3f9c1b6e-8a43-4c57-9d0e-1f2a3b4c5d6e");
+		input.set("header/xTenant", "benchmark");
+		input.set("header/acceptLanguage", "nl-BE, en;q=0.8");
+		input.set("header/ifNoneMatch", "\"33a64df551425fcc55e4d42a148795d9f25f89d4\"");
+		path = (ComplexContent) input.get("path");
+		query = (ComplexContent) input.get("query");
+		header = (ComplexContent) input.get("header");
+		// a plan without query parameters or headers would make the benchmark measure nothing
+		if (!pathAndQuery().contains("page=3")) {
+			throw new IllegalStateException("The query was not encoded: " + pathAndQuery());
+		}
+		if (headers().getHeaders().length < 2) {
+			throw new IllegalStateException("The headers were not encoded");
+		}
+	}
+	
+	@Benchmark
+	public String path() {
+		return plan.renderPath(null, path).toString();
+	}
+	
+	@Benchmark
+	public String pathAndQuery() {
+		StringBuilder target = plan.renderPath(null, path);
+		plan.getQueryEncoder().encode(target, query, target.indexOf("?") < 0);
+		return target.toString();
+	}
+	
+	@Benchmark
+	public ModifiablePart headers() {
+		ModifiablePart part = new PlainMimeEmptyPart(null, new MimeHeader("Content-Length", "0"));
+		plan.getHeaderEncoder().encode(part, header);
+		return part;
+	}
+}
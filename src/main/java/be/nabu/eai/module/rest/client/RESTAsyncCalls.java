@@ -0,0 +1,82 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import be.nabu.libs.types.api.ComplexContent;
+
+/**
+ * Keeps track of asynchronous calls that were started from a service so their result can be picked up later by id.
+ * A result that is not picked up is forgotten some time after the call is done.
+ */
+public class RESTAsyncCalls {
+
+	private static final long RETENTION = Long.parseLong(System.getProperty("be.nabu.eai.rest.client.async.retention", "600000"));
+	
+	private Map<String, Call> calls = new ConcurrentHashMap<String, Call>();
+
+	public String register(CompletableFuture<ComplexContent> future) {
+		expire();
+		String id = UUID.randomUUID().toString().replace("-", "");
+		final Call call = new Call(future);
+		calls.put(id, call);
+		future.whenComplete(new BiConsumer<ComplexContent, Throwable>() {
+			@Override
+			public void accept(ComplexContent output, Throwable error) {
+				call.completed = System.currentTimeMillis();
+			}
+		});
+		return id;
+	}
+
+	public CompletableFuture<ComplexContent> get(String id) {
+		Call call = id == null ? null : calls.get(id);
+		return call == null ? null : call.future;
+	}
+
+	public void remove(String id) {
+		calls.remove(id);
+	}
+
+	private void expire() {
+		long now = System.currentTimeMillis();
+		Iterator<Call> iterator = calls.values().iterator();
+		while (iterator.hasNext()) {
+			Call call = iterator.next();
+			if (call.completed > 0 && now - call.completed > RETENTION) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static class Call {
+		private final CompletableFuture<ComplexContent> future;
+		private volatile long completed;
+
+		private Call(CompletableFuture<ComplexContent> future) {
+			this.future = future;
+		}
+	}
+}
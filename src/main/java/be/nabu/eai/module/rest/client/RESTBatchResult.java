@@ -0,0 +1,83 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * The result of a single call in a batch as it is returned to services.
+ */
+@XmlRootElement(name = "batchResult")
+@XmlType(propOrder = { "index", "success", "output", "errorCode", "errorMessage" })
+public class RESTBatchResult {
+
+	private int index;
+	private boolean success;
+	private Object output;
+	private String errorCode, errorMessage;
+	
+	public static RESTBatchResult of(RESTClientBatch.Result result) {
+		RESTBatchResult batchResult = new RESTBatchResult();
+		batchResult.setIndex(result.getIndex());
+		batchResult.setSuccess(result.isSuccess());
+		batchResult.setOutput(result.getOutput());
+		if (result.getError() != null) {
+			batchResult.setErrorCode(result.getError().getCode());
+			batchResult.setErrorMessage(result.getError().getMessage());
+		}
+		return batchResult;
+	}
+	
+	// the position of the input in the batch
+	public int getIndex() {
+		return index;
+	}
+	public void setIndex(int index) {
+		this.index = index;
+	}
+	
+	public boolean isSuccess() {
+		return success;
+	}
+	public void setSuccess(boolean success) {
+		this.success = success;
+	}
+	
+	public Object getOutput() {
+		return output;
+	}
+	public void setOutput(Object output) {
+		this.output = output;
+	}
+	
+	public String getErrorCode() {
+		return errorCode;
+	}
+	public void setErrorCode(String errorCode) {
+		this.errorCode = errorCode;
+	}
+	
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+	public void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+}
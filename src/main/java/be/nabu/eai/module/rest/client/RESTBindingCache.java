@@ -0,0 +1,198 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.Closeable;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.nabu.eai.module.rest.WebResponseType;
+import be.nabu.libs.types.api.ComplexType;
+import be.nabu.libs.types.binding.form.FormBinding;
+import be.nabu.libs.types.binding.json.JSONBinding;
+import be.nabu.libs.types.binding.xml.XMLBinding;
+import be.nabu.libs.types.map.MapTypeGenerator;
+
+/**
+ * Pools configured bindings per type, charset and options.
+ * The bindings are not guaranteed to be thread safe, a borrowed binding is only used by one thread until it is released.
+ */
+public class RESTBindingCache {
+
+	public static final int IGNORE_ROOT_IF_ARRAY_WRAPPER = 1;
+	public static final int EXPLICIT_NULL_VALUES = 2;
+	public static final int LENIENT = 4;
+
+	// the amount of idle bindings we keep per key
+	private int maxIdle = Integer.parseInt(System.getProperty("be.nabu.eai.rest.client.bindings.maxIdle", "16"));
+	// the amount of different keys we keep, types are resolved by identity so in exotic cases new keys could keep being added
+	private int maxKeys = Integer.parseInt(System.getProperty("be.nabu.eai.rest.client.bindings.maxKeys", "64"));
+
+	private ConcurrentHashMap<BindingKey, Pool> pools = new ConcurrentHashMap<BindingKey, Pool>();
+
+	public Lease borrowMarshaller(WebResponseType kind, ComplexType type, Charset charset, int options) {
+		return borrow(new BindingKey(kind, true, type, charset, options));
+	}
+
+	public Lease borrowUnmarshaller(WebResponseType kind, ComplexType type, Charset charset, int options) {
+		return borrow(new BindingKey(kind, false, type, charset, options));
+	}
+
+	/**
+	 * Creates a binding that is not pooled, for example because the content it unmarshals keeps a reference to it (e.g. when windowing)
+	 */
+	public Lease createUnmarshaller(WebResponseType kind, ComplexType type, Charset charset, int options) {
+		return new Lease(null, create(new BindingKey(kind, false, type, charset, options)));
+	}
+	
+	public void clear() {
+		pools.clear();
+	}
+
+	private Lease borrow(BindingKey key) {
+		Pool pool = pools.get(key);
+		if (pool == null) {
+			if (pools.size() >= maxKeys) {
+				pools.clear();
+			}
+			pool = new Pool();
+			Pool existing = pools.putIfAbsent(key, pool);
+			if (existing != null) {
+				pool = existing;
+			}
+		}
+		Object binding = pool.bindings.poll();
+		if (binding == null) {
+			binding = create(key);
+		}
+		else {
+			pool.idle.decrementAndGet();
+		}
+		return new Lease(pool, binding);
+	}
+
+	private static Object create(BindingKey key) {
+		boolean ignoreRootIfArrayWrapper = (key.options & IGNORE_ROOT_IF_ARRAY_WRAPPER) != 0;
+		boolean lenient = (key.options & LENIENT) != 0;
+		switch(key.kind) {
+			case FORM_ENCODED:
+				return key.charset == null ? new FormBinding(key.type) : new FormBinding(key.type, key.charset);
+			case JSON:
+				JSONBinding jsonBinding = new JSONBinding(key.type, key.charset);
+				jsonBinding.setIgnoreRootIfArrayWrapper(ignoreRootIfArrayWrapper);
+				// see below in XML binding
+				jsonBinding.setCamelCaseDashes(true);
+				if (key.marshal) {
+					// for PATCH services we want to explicitly set "null" values for optional fields if we mapped it
+					jsonBinding.setMarshalExplicitNullValues((key.options & EXPLICIT_NULL_VALUES) != 0);
+				}
+				else {
+					// we allow dynamic types to be generated for parsing reasons but do not allow them to be added back into the type
+					// this necessitates that there is a key value array that can hold them
+					jsonBinding.setAllowDynamicElements(true);
+					jsonBinding.setComplexTypeGenerator(new MapTypeGenerator());
+					if (lenient) {
+						jsonBinding.setIgnoreUnknownElements(true);
+					}
+				}
+				return jsonBinding;
+			default:
+				XMLBinding xmlBinding = new XMLBinding(key.type, key.charset);
+				// we had an instance where the other party was using dashes in the names
+				// it is impossible to model a field name with a dash in it in nabu so it is (currently) acceptable to set this boolean globally
+				// if we ever do need to support dashes, make this configurable, i didn't want to do that at the time of writing because not all bindings support it (atm)
+				xmlBinding.setCamelCaseDashes(true);
+				if (!key.marshal && lenient) {
+					xmlBinding.setIgnoreUndefined(true);
+				}
+				return xmlBinding;
+		}
+	}
+
+	public class Lease implements Closeable {
+		private Pool pool;
+		private Object binding;
+
+		private Lease(Pool pool, Object binding) {
+			this.pool = pool;
+			this.binding = binding;
+		}
+
+		@SuppressWarnings("unchecked")
+		public <T> T getBinding() {
+			return (T) binding;
+		}
+
+		// returns the binding to the pool, it must not be used afterwards
+		@Override
+		public void close() {
+			if (binding != null && pool != null) {
+				if (pool.idle.incrementAndGet() <= maxIdle) {
+					pool.bindings.offer(binding);
+				}
+				else {
+					pool.idle.decrementAndGet();
+				}
+			}
+			binding = null;
+		}
+	}
+
+	private static class Pool {
+		private Queue<Object> bindings = new ConcurrentLinkedQueue<Object>();
+		private AtomicInteger idle = new AtomicInteger();
+	}
+
+	private static class BindingKey {
+		private WebResponseType kind;
+		private boolean marshal;
+		private ComplexType type;
+		private Charset charset;
+		private int options;
+
+		public BindingKey(WebResponseType kind, boolean marshal, ComplexType type, Charset charset, int options) {
+			this.kind = kind;
+			this.marshal = marshal;
+			this.type = type;
+			this.charset = charset;
+			this.options = options;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = kind.hashCode();
+			result = 31 * result + (marshal ? 1 : 0);
+			result = 31 * result + System.identityHashCode(type);
+			result = 31 * result + (charset == null ? 0 : charset.hashCode());
+			return 31 * result + options;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof BindingKey)) {
+				return false;
+			}
+			BindingKey other = (BindingKey) object;
+			return kind == other.kind && marshal == other.marshal && type == other.type && options == other.options
+				&& (charset == null ? other.charset == null : charset.equals(other.charset));
+		}
+	}
+}
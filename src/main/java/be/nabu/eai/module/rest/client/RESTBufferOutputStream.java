@@ -0,0 +1,156 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream backed by pooled buffers, when a buffer is full a bigger one is taken from the pool and the old one is returned.
+ * The content can be read any number of times until the buffer is released, streams that are still being read at that point keep working on a copy.
+ */
+public class RESTBufferOutputStream extends OutputStream {
+
+	private RESTBufferPool pool;
+	private ByteBuffer buffer;
+	// the size of the content, it survives the release
+	private int length;
+	// the amount of streams that have not been read to the end or closed
+	private int readers;
+	// the content after the buffer has been released, only if streams were still being read
+	private byte [] detached;
+
+	public RESTBufferOutputStream(RESTBufferPool pool) {
+		this(pool, 0);
+	}
+	
+	/**
+	 * The expected size avoids growing (and copying) the buffer while writing
+	 */
+	public RESTBufferOutputStream(RESTBufferPool pool, int expectedSize) {
+		this.pool = pool;
+		this.buffer = pool.acquire(expectedSize);
+	}
+
+	private void ensure(int amount) {
+		if (buffer.remaining() < amount) {
+			ByteBuffer bigger = pool.acquire(Math.max(buffer.capacity() * 2, buffer.position() + amount));
+			buffer.flip();
+			bigger.put(buffer);
+			pool.release(buffer);
+			buffer = bigger;
+		}
+	}
+
+	@Override
+	public void write(int value) {
+		ensure(1);
+		buffer.put((byte) value);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		ensure(length);
+		buffer.put(bytes, offset, length);
+	}
+
+	public synchronized int size() {
+		return buffer == null ? length : buffer.position();
+	}
+
+	/**
+	 * Every stream reads the content from the start, returns null if the buffer was released and the content is no longer available
+	 */
+	public synchronized InputStream toInputStream() {
+		if (buffer == null && detached == null) {
+			return null;
+		}
+		readers++;
+		return new InputStream() {
+			private int position;
+			private boolean done;
+			@Override
+			public int read() {
+				synchronized(RESTBufferOutputStream.this) {
+					if (done || position >= size()) {
+						finish();
+						return -1;
+					}
+					return (buffer == null ? detached[position++] : buffer.get(position++)) & 0xff;
+				}
+			}
+			@Override
+			public int read(byte[] bytes, int offset, int length) {
+				if (length == 0) {
+					return 0;
+				}
+				synchronized(RESTBufferOutputStream.this) {
+					int amount = done ? 0 : Math.min(length, size() - position);
+					if (amount <= 0) {
+						finish();
+						return -1;
+					}
+					if (buffer == null) {
+						System.arraycopy(detached, position, bytes, offset, amount);
+					}
+					else {
+						ByteBuffer content = buffer.duplicate();
+						content.position(position);
+						content.get(bytes, offset, amount);
+					}
+					position += amount;
+					return amount;
+				}
+			}
+			@Override
+			public int available() {
+				synchronized(RESTBufferOutputStream.this) {
+					return done ? 0 : Math.max(0, size() - position);
+				}
+			}
+			@Override
+			public void close() {
+				synchronized(RESTBufferOutputStream.this) {
+					finish();
+				}
+			}
+			private void finish() {
+				if (!done) {
+					done = true;
+					readers--;
+				}
+			}
+		};
+	}
+
+	// hands the buffer back to the pool, the content is only copied if a stream is still reading it
+	public synchronized void release() {
+		if (buffer != null) {
+			length = buffer.position();
+			if (readers > 0) {
+				detached = new byte[length];
+				ByteBuffer content = buffer.duplicate();
+				content.flip();
+				content.get(detached);
+			}
+			pool.release(buffer);
+			buffer = null;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of reusable buffers in power of two size classes, used to marshal request content that needs a content length.
+ * Buffers larger than the biggest size class are never pooled, the total amount of memory retained by idle buffers is capped.
+ */
+public class RESTBufferPool {
+
+	private static volatile RESTBufferPool instance;
+
+	public static RESTBufferPool getInstance() {
+		if (instance == null) {
+			synchronized(RESTBufferPool.class) {
+				if (instance == null) {
+					instance = new RESTBufferPool(
+						Integer.parseInt(System.getProperty("be.nabu.eai.rest.client.buffers.minimumSize", "4096")),
+						Integer.parseInt(System.getProperty("be.nabu.eai.rest.client.buffers.maximumSize", Integer.toString(16 * 1024 * 1024))),
+						Long.parseLong(System.getProperty("be.nabu.eai.rest.client.buffers.maxRetained", Long.toString(64l * 1024 * 1024))),
+						Boolean.parseBoolean(System.getProperty("be.nabu.eai.rest.client.buffers.direct", "false"))
+					);
+				}
+			}
+		}
+		return instance;
+	}
+
+	private final int minimumShift, maximumShift;
+	private final long maxRetained;
+	private final boolean direct;
+	private final Queue<ByteBuffer> [] classes;
+	private final AtomicLong retained = new AtomicLong(), hits = new AtomicLong(), misses = new AtomicLong();
+
+	@SuppressWarnings("unchecked")
+	public RESTBufferPool(int minimumSize, int maximumSize, long maxRetained, boolean direct) {
+		this.minimumShift = shift(minimumSize);
+		this.maximumShift = Math.max(minimumShift, shift(maximumSize));
+		this.maxRetained = maxRetained;
+		this.direct = direct;
+		this.classes = new Queue[maximumShift - minimumShift + 1];
+		for (int i = 0; i < classes.length; i++) {
+			classes[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+		}
+	}
+
+	// the exponent of the smallest power of two that can hold the size
+	private static int shift(int size) {
+		return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+	}
+
+	/**
+	 * Returns a cleared buffer of at least the requested capacity
+	 */
+	public ByteBuffer acquire(int capacity) {
+		int shift = Math.max(minimumShift, shift(capacity));
+		if (shift > maximumShift) {
+			misses.incrementAndGet();
+			return allocate(capacity);
+		}
+		ByteBuffer buffer = classes[shift - minimumShift].poll();
+		if (buffer == null) {
+			misses.incrementAndGet();
+			return allocate(1 << shift);
+		}
+		hits.incrementAndGet();
+		retained.addAndGet(-buffer.capacity());
+		buffer.clear();
+		return buffer;
+	}
+
+	public void release(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		// only exact size classes are pooled, anything else was allocated outside of the pool
+		if (Integer.bitCount(capacity) != 1 || buffer.isDirect() != direct) {
+			return;
+		}
+		int shift = shift(capacity);
+		if (shift < minimumShift || shift > maximumShift) {
+			return;
+		}
+		if (retained.addAndGet(capacity) > maxRetained) {
+			retained.addAndGet(-capacity);
+			return;
+		}
+		classes[shift - minimumShift].offer(buffer);
+	}
+
+	private ByteBuffer allocate(int capacity) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+	public long getMisses() {
+		return misses.get();
+	}
+	public long getRetained() {
+		return retained.get();
+	}
+	public long getMaxRetained() {
+		return maxRetained;
+	}
+	public boolean isDirect() {
+		return direct;
+	}
+}
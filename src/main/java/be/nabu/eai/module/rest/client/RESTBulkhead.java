@@ -0,0 +1,184 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the amount of concurrent calls with a bounded queue of waiting calls.
+ * When a slot frees up it is handed to the waiting call with the highest priority, calls with the same priority are admitted in the order they arrived.
+ */
+public class RESTBulkhead {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final PriorityQueue<Waiter> waiters = new PriorityQueue<Waiter>(16, new Comparator<Waiter>() {
+		@Override
+		public int compare(Waiter first, Waiter second) {
+			if (first.priority != second.priority) {
+				return first.priority > second.priority ? -1 : 1;
+			}
+			return Long.compare(first.sequence, second.sequence);
+		}
+	});
+	private int inFlight;
+	private long sequence, rejected, timedOut;
+
+	/**
+	 * Acquires a slot, returns false if the queue is full or no slot became available in time. A slot that was acquired must be released.
+	 */
+	public boolean acquire(Settings settings, int priority) throws InterruptedException {
+		lock.lock();
+		try {
+			if (inFlight < settings.getMaxInFlight() && waiters.isEmpty()) {
+				inFlight++;
+				return true;
+			}
+			else if (waiters.size() >= settings.getMaxQueued() || settings.getQueueTimeout() <= 0) {
+				rejected++;
+				return false;
+			}
+			Waiter waiter = new Waiter(priority, sequence++, lock.newCondition());
+			waiters.add(waiter);
+			long remaining = TimeUnit.MILLISECONDS.toNanos(settings.getQueueTimeout());
+			try {
+				while (!waiter.admitted) {
+					if (remaining <= 0) {
+						waiters.remove(waiter);
+						timedOut++;
+						return false;
+					}
+					remaining = waiter.condition.awaitNanos(remaining);
+				}
+				return true;
+			}
+			catch (InterruptedException e) {
+				// we may have been handed a slot in the meantime, pass it on
+				if (waiter.admitted) {
+					inFlight--;
+					admit(settings);
+				}
+				else {
+					waiters.remove(waiter);
+				}
+				throw e;
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public void release(Settings settings) {
+		lock.lock();
+		try {
+			inFlight--;
+			admit(settings);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	// slots are handed over directly so a new arrival can not take it from a waiting call
+	private void admit(Settings settings) {
+		while (inFlight < settings.getMaxInFlight() && !waiters.isEmpty()) {
+			Waiter waiter = waiters.poll();
+			waiter.admitted = true;
+			inFlight++;
+			waiter.condition.signal();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	public int getQueued() {
+		lock.lock();
+		try {
+			return waiters.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	// the amount of calls that were refused because the queue was full
+	public long getRejected() {
+		lock.lock();
+		try {
+			return rejected;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	// the amount of calls that did not get a slot within the queue timeout
+	public long getTimedOut() {
+		lock.lock();
+		try {
+			return timedOut;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private static class Waiter {
+		private final int priority;
+		private final long sequence;
+		private final Condition condition;
+		private boolean admitted;
+
+		private Waiter(int priority, long sequence, Condition condition) {
+			this.priority = priority;
+			this.sequence = sequence;
+			this.condition = condition;
+		}
+	}
+
+	public static class Settings {
+		private final int maxInFlight, maxQueued;
+		private final long queueTimeout;
+
+		public Settings(int maxInFlight, int maxQueued, long queueTimeout) {
+			this.maxInFlight = Math.max(1, maxInFlight);
+			this.maxQueued = maxQueued;
+			this.queueTimeout = queueTimeout;
+		}
+
+		public int getMaxInFlight() {
+			return maxInFlight;
+		}
+		public int getMaxQueued() {
+			return maxQueued;
+		}
+		// how long in milliseconds a call can wait for a slot
+		public long getQueueTimeout() {
+			return queueTimeout;
+		}
+	}
+}
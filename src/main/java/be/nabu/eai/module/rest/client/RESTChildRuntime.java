@@ -0,0 +1,83 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import be.nabu.libs.authentication.api.Token;
+import be.nabu.libs.services.ServiceRuntime;
+import be.nabu.libs.services.api.ExecutionContext;
+import be.nabu.libs.services.api.ServiceException;
+import be.nabu.libs.types.TypeUtils;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.Element;
+
+/**
+ * Runs the rest client on another thread than the caller as a child of the calling runtime.
+ * The execution context of the caller (and the transactions in it) is bound to the calling thread, so every call gets a new context for the same token.
+ * Must be created on the calling thread.
+ * Callers that already have a plan (e.g. a batch) can run the call on it directly, only the execution context is new.
+ */
+public class RESTChildRuntime {
+
+	private final RESTClientArtifact artifact;
+	private final Token token;
+	private final Map<String, Object> context;
+
+	public RESTChildRuntime(RESTClientArtifact artifact, ExecutionContext executionContext) {
+		this.artifact = artifact;
+		this.token = executionContext == null || executionContext.getSecurityContext() == null ? null : executionContext.getSecurityContext().getToken();
+		ServiceRuntime parent = ServiceRuntime.getRuntime();
+		this.context = parent == null || parent.getContext() == null ? null : new HashMap<String, Object>(parent.getContext());
+	}
+
+	public ComplexContent run(ComplexContent input) throws ServiceException {
+		ServiceRuntime runtime = new ServiceRuntime(artifact, artifact.getRepository().newExecutionContext(token));
+		if (context != null) {
+			runtime.setContext(new HashMap<String, Object>(context));
+		}
+		return runtime.run(withoutTransaction(input));
+	}
+
+	public ComplexContent run(RESTClientServiceInstance instance, RESTClientPlan plan, ComplexContent input) throws ServiceException {
+		return instance.execute(newExecutionContext(), withoutTransaction(input), plan);
+	}
+	
+	public ExecutionContext newExecutionContext() {
+		return artifact.getRepository().newExecutionContext(token);
+	}
+
+	// a transaction of the caller can not be used from another thread
+	static ComplexContent withoutTransaction(ComplexContent input) {
+		if (input == null || input.get("transactionId") == null) {
+			return input;
+		}
+		ComplexContent copy = input.getType().newInstance();
+		for (Element<?> child : TypeUtils.getAllChildren(input.getType())) {
+			if (!child.getName().equals("transactionId")) {
+				Object value = input.get(child.getName());
+				if (value != null) {
+					copy.set(child.getName(), value);
+				}
+			}
+		}
+		return copy;
+	}
+}
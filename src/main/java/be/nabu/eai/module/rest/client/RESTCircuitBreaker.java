@@ -0,0 +1,234 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A circuit breaker over a sliding window of the most recent calls.
+ * If too many of those calls failed or were too slow, the circuit opens and calls fail fast until the open duration has passed.
+ * After that a limited amount of probe calls is let through: if they all succeed the circuit closes again, if one of them fails it opens again.
+ */
+public class RESTCircuitBreaker {
+
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private static final int WINDOW_SIZE = 100;
+	private static final int HALF_OPEN_CALLS = 3;
+
+	private static final byte FAILED = 1, SLOW = 2;
+
+	// the maximum amount of hosts we keep a breaker for, the hosts can come from the input so they are not bounded by the configuration
+	private static final int MAX_HOSTS = Integer.parseInt(System.getProperty("be.nabu.eai.rest.client.circuit.maxHosts", "1024"));
+
+	// the breakers per host for rest clients without an endpoint
+	private static ConcurrentHashMap<String, RESTCircuitBreaker> hosts = new ConcurrentHashMap<String, RESTCircuitBreaker>();
+
+	public static RESTCircuitBreaker getForHost(String host) {
+		RESTCircuitBreaker breaker = hosts.get(host);
+		if (breaker == null) {
+			breaker = new RESTCircuitBreaker(host);
+			if (hosts.size() >= MAX_HOSTS && !evict()) {
+				// nothing can be evicted without losing an open circuit, this host gets a breaker that is not shared
+				return breaker;
+			}
+			RESTCircuitBreaker existing = hosts.putIfAbsent(host, breaker);
+			if (existing != null) {
+				breaker = existing;
+			}
+		}
+		return breaker;
+	}
+
+	// closed breakers without failures carry no information, if there are none we drop the other closed breakers
+	private static boolean evict() {
+		boolean evicted = false;
+		for (Map.Entry<String, RESTCircuitBreaker> entry : hosts.entrySet()) {
+			if (entry.getValue().getState() == State.CLOSED && entry.getValue().getFailureRate() == 0) {
+				evicted |= hosts.remove(entry.getKey(), entry.getValue());
+			}
+		}
+		if (!evicted) {
+			for (Map.Entry<String, RESTCircuitBreaker> entry : hosts.entrySet()) {
+				if (entry.getValue().getState() == State.CLOSED) {
+					evicted |= hosts.remove(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		return evicted;
+	}
+
+	public static Map<String, RESTCircuitBreaker> getHostBreakers() {
+		return Collections.unmodifiableMap(hosts);
+	}
+
+	private final String name;
+	private final byte [] window = new byte[WINDOW_SIZE];
+	private int position, calls, failures, slowCalls;
+	private State state = State.CLOSED;
+	private long openUntil;
+	private int probes, probeSuccesses;
+	private long rejected, opened;
+
+	public RESTCircuitBreaker(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Whether a call may be done at this point, a call that is allowed must always be recorded
+	 */
+	public synchronized boolean tryAcquire(long now) {
+		if (state == State.OPEN) {
+			if (now < openUntil) {
+				rejected++;
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probes = 0;
+			probeSuccesses = 0;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probes >= HALF_OPEN_CALLS) {
+				rejected++;
+				return false;
+			}
+			probes++;
+		}
+		return true;
+	}
+
+	public synchronized void record(Settings settings, boolean failed, long duration, long now) {
+		// without a slow call rate, slow calls can not open the circuit and a slow probe should not open it either
+		boolean slow = settings.getSlowCallRate() > 0 && settings.getSlowCallDuration() > 0 && duration >= settings.getSlowCallDuration();
+		if (state == State.HALF_OPEN) {
+			if (failed || slow) {
+				open(settings, now);
+			}
+			else if (++probeSuccesses >= HALF_OPEN_CALLS) {
+				close();
+			}
+			return;
+		}
+		// calls that were started before the circuit opened
+		else if (state == State.OPEN) {
+			return;
+		}
+		byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+		if (calls == WINDOW_SIZE) {
+			byte evicted = window[position];
+			failures -= evicted & FAILED;
+			slowCalls -= (evicted & SLOW) >> 1;
+		}
+		else {
+			calls++;
+		}
+		window[position] = outcome;
+		position = (position + 1) % WINDOW_SIZE;
+		failures += outcome & FAILED;
+		slowCalls += (outcome & SLOW) >> 1;
+		if (calls >= settings.getMinimumCalls()) {
+			if (getFailureRate() >= settings.getFailureRate() || (settings.getSlowCallRate() > 0 && getSlowCallRate() >= settings.getSlowCallRate())) {
+				open(settings, now);
+			}
+		}
+	}
+
+	private void open(Settings settings, long now) {
+		state = State.OPEN;
+		openUntil = now + settings.getOpenDuration();
+		opened++;
+		reset();
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		reset();
+	}
+
+	private void reset() {
+		calls = 0;
+		failures = 0;
+		slowCalls = 0;
+		position = 0;
+	}
+
+	public String getName() {
+		return name;
+	}
+	public synchronized State getState() {
+		return state;
+	}
+	// the fraction of failed calls in the current window
+	public synchronized double getFailureRate() {
+		return calls == 0 ? 0 : (double) failures / calls;
+	}
+	public synchronized double getSlowCallRate() {
+		return calls == 0 ? 0 : (double) slowCalls / calls;
+	}
+	public synchronized int getCalls() {
+		return calls;
+	}
+	// the amount of calls that failed fast because the circuit was open
+	public synchronized long getRejected() {
+		return rejected;
+	}
+	// how many times the circuit has opened
+	public synchronized long getOpened() {
+		return opened;
+	}
+	// when the circuit will allow probe calls again (if it is open)
+	public synchronized long getOpenUntil() {
+		return openUntil;
+	}
+
+	public static class Settings {
+		private final double failureRate, slowCallRate;
+		private final long slowCallDuration, openDuration;
+		private final int minimumCalls;
+
+		public Settings(double failureRate, double slowCallRate, long slowCallDuration, int minimumCalls, long openDuration) {
+			this.failureRate = failureRate;
+			this.slowCallRate = slowCallRate;
+			this.slowCallDuration = slowCallDuration;
+			this.minimumCalls = Math.max(1, Math.min(minimumCalls, WINDOW_SIZE));
+			this.openDuration = openDuration;
+		}
+
+		public double getFailureRate() {
+			return failureRate;
+		}
+		public double getSlowCallRate() {
+			return slowCallRate;
+		}
+		public long getSlowCallDuration() {
+			return slowCallDuration;
+		}
+		public int getMinimumCalls() {
+			return minimumCalls;
+		}
+		public long getOpenDuration() {
+			return openDuration;
+		}
+	}
+}
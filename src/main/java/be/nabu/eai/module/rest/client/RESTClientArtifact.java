@@ -26,6 +26,10 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import nabu.protocols.http.client.Services;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,14 +40,17 @@ import be.nabu.eai.repository.artifacts.jaxb.JAXBArtifact;
 import be.nabu.libs.artifacts.ExternalDependencyImpl;
 import be.nabu.libs.artifacts.api.ExternalDependency;
 import be.nabu.libs.artifacts.api.ExternalDependencyArtifact;
+import be.nabu.libs.http.api.client.HTTPClient;
 import be.nabu.libs.http.glue.GlueListener;
 import be.nabu.libs.property.api.Value;
 import be.nabu.libs.resources.api.ResourceContainer;
 import be.nabu.libs.services.api.DefinedService;
+import be.nabu.libs.services.api.ExecutionContext;
 import be.nabu.libs.services.api.ServiceInstance;
 import be.nabu.libs.services.api.ServiceInterface;
 import be.nabu.libs.types.SimpleTypeWrapperFactory;
 import be.nabu.libs.types.TypeUtils;
+import be.nabu.libs.types.api.ComplexContent;
 import be.nabu.libs.types.api.ComplexType;
 import be.nabu.libs.types.api.Element;
 import be.nabu.libs.types.base.ComplexElementImpl;
@@ -60,14 +67,44 @@ public class RESTClientArtifact extends JAXBArtifact<RESTClientConfiguration> im
 	
 	private Structure input, output, query, requestHeader, responseHeader, path;
 	
+	private volatile RESTClientPlan plan;
+	
+	private volatile RESTResponseHeaderPlan responseHeaderPlan;
+	
+	private RESTBindingCache bindings = new RESTBindingCache();
+	
+	private RESTResponseCache responseCache = new RESTResponseCache(0, 0);
+	
+	private RESTRequestCoalescer coalescer = new RESTRequestCoalescer();
+	
+	// only used if there is no endpoint, otherwise the budget is shared with the other clients of the endpoint
+	private RESTRetryBudget retryBudget = new RESTRetryBudget();
+	
+	private RESTMetrics metrics;
+	
+	// the asynchronous calls started from services
+	private RESTAsyncCalls asyncCalls = new RESTAsyncCalls();
+	
+	// the executor for asynchronous calls, if none is set the shared default is used
+	private Executor executor;
+	
+	private volatile RESTStubServer stubServer;
+	
 	public RESTClientArtifact(String id, ResourceContainer<?> directory, Repository repository) {
 		super(id, directory, repository, "rest-client.xml", RESTClientConfiguration.class);
+		this.metrics = new RESTMetrics(repository, id);
 	}
 
 	@Override
 	public void save(ResourceContainer<?> directory) throws IOException {
 		synchronized(this) {
 			rebuildInterface();
+			plan = null;
+			bindings.clear();
+			if (stubServer != null) {
+				stubServer.close();
+				stubServer = null;
+			}
 		}
 		super.save(directory);
 	}
@@ -108,7 +145,131 @@ public class RESTClientArtifact extends JAXBArtifact<RESTClientConfiguration> im
 	public ServiceInstance newInstance() {
 		return new RESTClientServiceInstance(this);
 	}
+	
+	/**
+	 * Executes this rest client without blocking the calling thread
+	 */
+	public CompletableFuture<ComplexContent> executeAsync(ExecutionContext executionContext, ComplexContent input) {
+		return new RESTClientServiceInstance(this).executeAsync(executionContext, input, getExecutor());
+	}
+	
+	/**
+	 * Executes this rest client for each input with at most the configured amount of concurrent calls, the results are in the same order as the inputs
+	 */
+	public List<RESTClientBatch.Result> executeBatch(ExecutionContext executionContext, List<ComplexContent> inputs) throws InterruptedException {
+		return executeBatch(executionContext, inputs, getPlan().getBatchConcurrency());
+	}
+	
+	public List<RESTClientBatch.Result> executeBatch(ExecutionContext executionContext, List<ComplexContent> inputs, int concurrency) throws InterruptedException {
+		return new RESTClientBatch(this, getExecutor()).execute(executionContext, inputs, concurrency);
+	}
+	
+	public Executor getExecutor() {
+		return executor == null ? RESTClientExecutors.getDefault() : executor;
+	}
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
 
+	public RESTClientPlan getPlan() {
+		RESTClientPlan plan = this.plan;
+		if (plan == null || !plan.isCurrent(this)) {
+			synchronized(this) {
+				plan = this.plan;
+				if (plan == null || !plan.isCurrent(this)) {
+					// the encoders in the plan only see the query parameters and request headers once the interface is built
+					getServiceInterface().getInputDefinition();
+					plan = RESTClientPlan.compile(this);
+					this.plan = plan;
+					// the cached responses may have been fetched from another host or with other credentials
+					responseCache.clear();
+					responseCache.setLimits(plan.isCacheResponses() ? plan.getCacheMaxEntries() : 0, plan.getCacheMaxSize());
+				}
+			}
+		}
+		return plan;
+	}
+	
+	// the client that sends the requests, this can be overridden to run outside of a repository (e.g. in benchmarks)
+	HTTPClient getHttpClient(ExecutionContext executionContext, String transactionId, RESTClientPlan plan) {
+		return Services.getTransactionable(executionContext, transactionId, plan.getHttpClient()).getClient();
+	}
+	
+	HTTPClient getClient(ExecutionContext executionContext, String transactionId, RESTClientPlan plan) throws IOException {
+		HTTPClient client = getHttpClient(executionContext, transactionId, plan);
+		if (plan.getStubMode() == RESTStubServer.Mode.RECORD) {
+			return new RESTStubRecorder(client, getDirectory(), plan.getStub());
+		}
+		else if (plan.getStubMode() == RESTStubServer.Mode.REPLAY) {
+			return getStubServer(plan.getStub()).wrap(client);
+		}
+		return client;
+	}
+	
+	// the server is restarted when the settings change, this also picks up new recordings
+	private RESTStubServer getStubServer(RESTStubServer.Settings settings) throws IOException {
+		RESTStubServer server = stubServer;
+		if (server == null || server.getSettings() != settings) {
+			synchronized(this) {
+				server = stubServer;
+				if (server == null || server.getSettings() != settings) {
+					if (server != null) {
+						server.close();
+					}
+					server = new RESTStubServer(getDirectory(), settings);
+					stubServer = server;
+				}
+			}
+		}
+		return server;
+	}
+	
+	/**
+	 * The local server that replays the recorded responses, null if it has not been started
+	 */
+	public RESTStubServer getStubServer() {
+		return stubServer;
+	}
+	
+	public RESTBindingCache getBindings() {
+		return bindings;
+	}
+	
+	public RESTResponseCache getResponseCache() {
+		return responseCache;
+	}
+	
+	public RESTMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public RESTAsyncCalls getAsyncCalls() {
+		return asyncCalls;
+	}
+	
+	public RESTRequestCoalescer getCoalescer() {
+		return coalescer;
+	}
+	
+	/**
+	 * The circuit breaker used by this rest client (if it is configured), this is shared with the other clients of the same endpoint or host
+	 */
+	public RESTCircuitBreaker getCircuitBreaker() {
+		RESTClientPlan plan = getPlan();
+		if (plan.getCircuitBreaker() == null) {
+			return null;
+		}
+		else if (plan.getEndpoint() != null) {
+			return plan.getEndpoint().getCircuitBreaker();
+		}
+		return plan.getHost() == null ? null : RESTCircuitBreaker.getForHost((plan.isSecure() ? "https://" : "http://") + plan.getHost());
+	}
+	
+	public RESTRetryBudget getRetryBudget() {
+		RESTEndpointArtifact endpoint = getConfig().getEndpoint();
+		return endpoint == null ? retryBudget : endpoint.getRetryBudget();
+	}
+	
 	@Override
 	public Set<String> getReferences() {
 		return new HashSet<String>();
@@ -123,6 +284,8 @@ public class RESTClientArtifact extends JAXBArtifact<RESTClientConfiguration> im
 	}
 	public void setQuery(Structure query) {
 		this.query = query;
+		// the query encoder in the plan is bound to the structure
+		this.plan = null;
 	}
 	public Structure getRequestHeader() {
 		if (requestHeader == null) {
@@ -134,6 +297,8 @@ public class RESTClientArtifact extends JAXBArtifact<RESTClientConfiguration> im
 
 	public void setRequestHeader(Structure requestHeader) {
 		this.requestHeader = requestHeader;
+		// the header encoder in the plan is bound to the structure
+		this.plan = null;
 	}
 
 	public Structure getResponseHeader() {
@@ -305,6 +470,10 @@ public class RESTClientArtifact extends JAXBArtifact<RESTClientConfiguration> im
 			if (endpoint != null && endpoint.getConfig().getApiQueryName() != null && endpoint.getConfig().getApiQueryKey() == null) {
 				input.add(new SimpleElementImpl<String>("apiQueryKey", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), input));
 			}
+			// calls with a higher priority are admitted first when the endpoint is saturated
+			if (endpoint != null && endpoint.getConfig().getMaxInFlight() != null) {
+				input.add(new SimpleElementImpl<Integer>("priority", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(Integer.class), input, new ValueImpl<Integer>(MinOccursProperty.getInstance(), 0)));
+			}
 			
 			// output
 			output.setName("output");
@@ -341,14 +510,22 @@ public class RESTClientArtifact extends JAXBArtifact<RESTClientConfiguration> im
 				output.add(new ComplexElementImpl("content", (ComplexType) getConfiguration().getOutput(), output));
 			}
 			
+			this.responseHeaderPlan = output.get("header") == null ? null : new RESTResponseHeaderPlan(responseHeader);
 			this.input = input;
 			this.output = output;
+			// the query and request header structures were changed in place, a plan compiled against them is outdated
+			this.plan = null;
 		}
 		catch (Exception e) {
 			logger.error("Could not build interface for " + getId(), e);
 		}
 	}
 
+	// only available once the interface is built
+	RESTResponseHeaderPlan getResponseHeaderPlan() {
+		return responseHeaderPlan;
+	}
+
 	@Override
 	public String getDescription() {
 		return getConfig().getDescription();
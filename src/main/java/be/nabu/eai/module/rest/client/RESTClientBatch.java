@@ -0,0 +1,147 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.nabu.libs.services.api.ExecutionContext;
+import be.nabu.libs.services.api.ServiceException;
+import be.nabu.libs.types.api.ComplexContent;
+
+/**
+ * Executes a rest client for a list of inputs with a bounded amount of concurrent calls.
+ * A fixed amount of workers takes the next input until all are done, so no more than the concurrency limit of calls is ever in flight or queued.
+ * All the workers share the same plan, the calling thread uses its own execution context, the other workers get a new one for every call.
+ */
+public class RESTClientBatch {
+
+	private RESTClientArtifact artifact;
+	private Executor executor;
+
+	public RESTClientBatch(RESTClientArtifact artifact, Executor executor) {
+		this.artifact = artifact;
+		this.executor = executor;
+	}
+
+	/**
+	 * Executes all the inputs and returns the results in the same order as the inputs, a failed call does not stop the others
+	 */
+	public List<Result> execute(final ExecutionContext executionContext, final List<ComplexContent> inputs, int concurrency) throws InterruptedException {
+		final Result [] results = new Result[inputs.size()];
+		if (inputs.isEmpty()) {
+			return new ArrayList<Result>();
+		}
+		final RESTClientPlan plan = artifact.getPlan();
+		final RESTClientServiceInstance instance = new RESTClientServiceInstance(artifact);
+		final RESTChildRuntime runtime = new RESTChildRuntime(artifact, executionContext);
+		final Thread caller = Thread.currentThread();
+		final AtomicInteger next = new AtomicInteger();
+		int workers = Math.max(1, Math.min(concurrency, inputs.size()));
+		final CountDownLatch latch = new CountDownLatch(workers);
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					int index;
+					while ((index = next.getAndIncrement()) < results.length) {
+						// if the batch was interrupted we stop as soon as possible
+						if (Thread.currentThread().isInterrupted()) {
+							results[index] = notExecuted(index);
+							break;
+						}
+						try {
+							ComplexContent input = inputs.get(index);
+							results[index] = new Result(index, Thread.currentThread() == caller ? instance.execute(executionContext, input, plan) : runtime.run(instance, plan, input), null);
+						}
+						catch (ServiceException e) {
+							results[index] = new Result(index, null, e);
+						}
+						catch (Exception e) {
+							results[index] = new Result(index, null, new ServiceException(e));
+						}
+					}
+				}
+				finally {
+					latch.countDown();
+				}
+			}
+		};
+		// the calling thread is one of the workers
+		for (int i = 1; i < workers; i++) {
+			try {
+				executor.execute(worker);
+			}
+			catch (RejectedExecutionException e) {
+				// the remaining workers will pick up the slack
+				latch.countDown();
+			}
+		}
+		try {
+			worker.run();
+			latch.await();
+		}
+		catch (InterruptedException e) {
+			// make sure no new calls are started
+			next.set(results.length);
+			throw e;
+		}
+		// a worker that stopped on an interrupt leaves the inputs it did not claim
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null) {
+				results[i] = notExecuted(i);
+			}
+		}
+		return Arrays.asList(results);
+	}
+	
+	private static Result notExecuted(int index) {
+		return new Result(index, null, new ServiceException("REST-CLIENT-13", "The call was not executed because the batch was interrupted"));
+	}
+
+	public static class Result {
+		private final int index;
+		private final ComplexContent output;
+		private final ServiceException error;
+
+		Result(int index, ComplexContent output, ServiceException error) {
+			this.index = index;
+			this.output = output;
+			this.error = error;
+		}
+
+		// the position of the input in the batch
+		public int getIndex() {
+			return index;
+		}
+		public ComplexContent getOutput() {
+			return output;
+		}
+		public ServiceException getError() {
+			return error;
+		}
+		public boolean isSuccess() {
+			return error == null;
+		}
+	}
+}
@@ -31,7 +31,7 @@ import be.nabu.eai.repository.jaxb.ArtifactXMLAdapter;
 import be.nabu.libs.http.api.WebAuthorizationType;
 
 @XmlRootElement(name = "restClient")
-@XmlType(propOrder = { "host", "secure", "httpClient", "preemptiveAuthorizationType", "username", "password", "requestType", "responseType", "charset", "gzip", "sanitizeOutput", "validateInput", "validateOutput", "lenient", "description", "ignoreRootIfArrayWrapper", "endpoint" })
+@XmlType(propOrder = { "host", "secure", "httpClient", "preemptiveAuthorizationType", "username", "password", "requestType", "responseType", "charset", "gzip", "sanitizeOutput", "validateInput", "validateOutput", "lenient", "description", "ignoreRootIfArrayWrapper", "endpoint", "streamInput", "windows", "cacheResponses", "cacheMaxEntries", "cacheMaxSize", "coalesceRequests", "coalesceTimeout", "batchConcurrency", "retryAttempts", "retryStatusCodes", "retryExceptions", "retryNonIdempotent", "retryInitialDelay", "retryMaxDelay", "retryBudget", "circuitBreaker", "circuitFailureRate", "circuitSlowCallRate", "circuitSlowCallDuration", "circuitMinimumCalls", "circuitOpenDuration", "stubMode", "stubLatency", "stubLatencyJitter", "stubRecordedLatency", "stubBandwidth", "stubThreads", "errorBodyMaxSize" })
 public class RESTClientConfiguration extends RESTConfiguration {
 	
 	private HTTPClientArtifact httpClient;
@@ -43,6 +43,38 @@ public class RESTClientConfiguration extends RESTConfiguration {
 	private Boolean secure, sanitizeOutput;
 	private WebAuthorizationType preemptiveAuthorizationType;
 	private Boolean validateInput, validateOutput;
+	// marshal the input while sending it instead of buffering it to calculate a content length
+	private Boolean streamInput;
+	// windows to use when unmarshalling large responses, e.g. "content/items:500"
+	private String windows;
+	// overrides the response caching of the endpoint
+	private Boolean cacheResponses;
+	private Integer cacheMaxEntries;
+	private Long cacheMaxSize;
+	// share the response of identical concurrent requests
+	private Boolean coalesceRequests;
+	// how long in milliseconds a coalesced request waits for the request it joined
+	private Long coalesceTimeout;
+	// the maximum amount of concurrent calls when executing a batch
+	private Integer batchConcurrency;
+	// overrides the retry policy of the endpoint
+	private Integer retryAttempts;
+	private String retryStatusCodes, retryExceptions;
+	private Boolean retryNonIdempotent;
+	private Long retryInitialDelay, retryMaxDelay;
+	private Double retryBudget;
+	// overrides the circuit breaker settings of the endpoint, the circuit itself is shared by the endpoint (or host)
+	private Boolean circuitBreaker;
+	private Double circuitFailureRate, circuitSlowCallRate;
+	private Long circuitSlowCallDuration, circuitOpenDuration;
+	private Integer circuitMinimumCalls;
+	// record the responses of the server or replay them from a local server
+	private RESTStubServer.Mode stubMode;
+	private Long stubLatency, stubLatencyJitter, stubBandwidth;
+	private Boolean stubRecordedLatency;
+	private Integer stubThreads;
+	// overrides the maximum size of a captured error response of the endpoint
+	private Integer errorBodyMaxSize;
 	// for backwards compatibility it has to be true
 	private boolean ignoreRootIfArrayWrapper = true;
 	private boolean lenient = true;
@@ -182,5 +214,230 @@ public class RESTClientConfiguration extends RESTConfiguration {
 	public void setEndpoint(RESTEndpointArtifact endpoint) {
 		this.endpoint = endpoint;
 	}
+	
+	@Advanced
+	public Boolean getStreamInput() {
+		return streamInput;
+	}
+	public void setStreamInput(Boolean streamInput) {
+		this.streamInput = streamInput;
+	}
+	
+	@Advanced
+	public String getWindows() {
+		return windows;
+	}
+	public void setWindows(String windows) {
+		this.windows = windows;
+	}
+
+	@Advanced
+	public Boolean getCacheResponses() {
+		return cacheResponses;
+	}
+	public void setCacheResponses(Boolean cacheResponses) {
+		this.cacheResponses = cacheResponses;
+	}
+	
+	@Advanced
+	public Integer getCacheMaxEntries() {
+		return cacheMaxEntries;
+	}
+	public void setCacheMaxEntries(Integer cacheMaxEntries) {
+		this.cacheMaxEntries = cacheMaxEntries;
+	}
+	
+	@Advanced
+	public Long getCacheMaxSize() {
+		return cacheMaxSize;
+	}
+	public void setCacheMaxSize(Long cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+	
+	@Advanced
+	public Boolean getCoalesceRequests() {
+		return coalesceRequests;
+	}
+	public void setCoalesceRequests(Boolean coalesceRequests) {
+		this.coalesceRequests = coalesceRequests;
+	}
+	
+	@Advanced
+	public Long getCoalesceTimeout() {
+		return coalesceTimeout;
+	}
+	public void setCoalesceTimeout(Long coalesceTimeout) {
+		this.coalesceTimeout = coalesceTimeout;
+	}
+	
+	@Advanced
+	public Integer getBatchConcurrency() {
+		return batchConcurrency;
+	}
+	public void setBatchConcurrency(Integer batchConcurrency) {
+		this.batchConcurrency = batchConcurrency;
+	}
+	
+	@Advanced
+	public Integer getRetryAttempts() {
+		return retryAttempts;
+	}
+	public void setRetryAttempts(Integer retryAttempts) {
+		this.retryAttempts = retryAttempts;
+	}
+	
+	@Advanced
+	public String getRetryStatusCodes() {
+		return retryStatusCodes;
+	}
+	public void setRetryStatusCodes(String retryStatusCodes) {
+		this.retryStatusCodes = retryStatusCodes;
+	}
+	
+	@Advanced
+	public String getRetryExceptions() {
+		return retryExceptions;
+	}
+	public void setRetryExceptions(String retryExceptions) {
+		this.retryExceptions = retryExceptions;
+	}
+	
+	@Advanced
+	public Boolean getRetryNonIdempotent() {
+		return retryNonIdempotent;
+	}
+	public void setRetryNonIdempotent(Boolean retryNonIdempotent) {
+		this.retryNonIdempotent = retryNonIdempotent;
+	}
+	
+	@Advanced
+	public Long getRetryInitialDelay() {
+		return retryInitialDelay;
+	}
+	public void setRetryInitialDelay(Long retryInitialDelay) {
+		this.retryInitialDelay = retryInitialDelay;
+	}
+	
+	@Advanced
+	public Long getRetryMaxDelay() {
+		return retryMaxDelay;
+	}
+	public void setRetryMaxDelay(Long retryMaxDelay) {
+		this.retryMaxDelay = retryMaxDelay;
+	}
+	
+	@Advanced
+	public Double getRetryBudget() {
+		return retryBudget;
+	}
+	public void setRetryBudget(Double retryBudget) {
+		this.retryBudget = retryBudget;
+	}
+	
+	@Advanced
+	public Boolean getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	public void setCircuitBreaker(Boolean circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+	
+	@Advanced
+	public Double getCircuitFailureRate() {
+		return circuitFailureRate;
+	}
+	public void setCircuitFailureRate(Double circuitFailureRate) {
+		this.circuitFailureRate = circuitFailureRate;
+	}
+	
+	@Advanced
+	public Double getCircuitSlowCallRate() {
+		return circuitSlowCallRate;
+	}
+	public void setCircuitSlowCallRate(Double circuitSlowCallRate) {
+		this.circuitSlowCallRate = circuitSlowCallRate;
+	}
+	
+	@Advanced
+	public Long getCircuitSlowCallDuration() {
+		return circuitSlowCallDuration;
+	}
+	public void setCircuitSlowCallDuration(Long circuitSlowCallDuration) {
+		this.circuitSlowCallDuration = circuitSlowCallDuration;
+	}
+	
+	@Advanced
+	public Integer getCircuitMinimumCalls() {
+		return circuitMinimumCalls;
+	}
+	public void setCircuitMinimumCalls(Integer circuitMinimumCalls) {
+		this.circuitMinimumCalls = circuitMinimumCalls;
+	}
+	
+	@Advanced
+	public Long getCircuitOpenDuration() {
+		return circuitOpenDuration;
+	}
+	public void setCircuitOpenDuration(Long circuitOpenDuration) {
+		this.circuitOpenDuration = circuitOpenDuration;
+	}
+	
+	@Advanced
+	@EnvironmentSpecific
+	public RESTStubServer.Mode getStubMode() {
+		return stubMode;
+	}
+	public void setStubMode(RESTStubServer.Mode stubMode) {
+		this.stubMode = stubMode;
+	}
+	
+	@Advanced
+	public Long getStubLatency() {
+		return stubLatency;
+	}
+	public void setStubLatency(Long stubLatency) {
+		this.stubLatency = stubLatency;
+	}
+	
+	@Advanced
+	public Long getStubLatencyJitter() {
+		return stubLatencyJitter;
+	}
+	public void setStubLatencyJitter(Long stubLatencyJitter) {
+		this.stubLatencyJitter = stubLatencyJitter;
+	}
+	
+	@Advanced
+	public Boolean getStubRecordedLatency() {
+		return stubRecordedLatency;
+	}
+	public void setStubRecordedLatency(Boolean stubRecordedLatency) {
+		this.stubRecordedLatency = stubRecordedLatency;
+	}
+	
+	@Advanced
+	public Long getStubBandwidth() {
+		return stubBandwidth;
+	}
+	public void setStubBandwidth(Long stubBandwidth) {
+		this.stubBandwidth = stubBandwidth;
+	}
+	
+	@Advanced
+	public Integer getStubThreads() {
+		return stubThreads;
+	}
+	public void setStubThreads(Integer stubThreads) {
+		this.stubThreads = stubThreads;
+	}
+	
+	@Advanced
+	public Integer getErrorBodyMaxSize() {
+		return errorBodyMaxSize;
+	}
+	public void setErrorBodyMaxSize(Integer errorBodyMaxSize) {
+		this.errorBodyMaxSize = errorBodyMaxSize;
+	}
 
 }
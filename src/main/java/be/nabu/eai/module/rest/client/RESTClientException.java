@@ -0,0 +1,58 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import be.nabu.libs.services.api.ServiceException;
+import be.nabu.libs.types.api.ComplexContent;
+
+/**
+ * The remote server responded with an error code, the code of the exception is "REST-CLIENT-" followed by the status code.
+ */
+public class RESTClientException extends ServiceException {
+
+	private static final long serialVersionUID = 1L;
+	
+	private final int status;
+	private final RESTErrorBody body;
+
+	public RESTClientException(int status, String message, RESTErrorBody body) {
+		super("REST-CLIENT-" + status, "An error occurred on the remote server: [" + status + "] " + message + describe(body));
+		this.status = status;
+		this.body = body;
+	}
+	
+	private static String describe(RESTErrorBody body) {
+		if (body == null) {
+			return "";
+		}
+		return "\n" + body.getText() + (body.isTruncated() ? "... (truncated)" : "");
+	}
+
+	public int getStatus() {
+		return status;
+	}
+	// the (possibly truncated) content of the error response, null if there was none
+	public RESTErrorBody getBody() {
+		return body;
+	}
+	// the problem details sent by the server (if any)
+	public ComplexContent getProblem() {
+		return body == null ? null : body.getProblem();
+	}
+}
@@ -0,0 +1,92 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The executors for asynchronous rest calls. If the jvm supports virtual threads they are used by default, otherwise a bounded pool of daemon threads is used.
+ */
+public class RESTClientExecutors {
+
+	private static Logger logger = LoggerFactory.getLogger(RESTClientExecutors.class);
+	
+	private static volatile ExecutorService instance;
+
+	public static ExecutorService getDefault() {
+		if (instance == null) {
+			synchronized(RESTClientExecutors.class) {
+				if (instance == null) {
+					instance = newExecutor(
+						Boolean.parseBoolean(System.getProperty("be.nabu.eai.rest.client.async.virtual", "true")),
+						Integer.parseInt(System.getProperty("be.nabu.eai.rest.client.async.threads", "64"))
+					);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new executor, the amount of threads is only used if no virtual threads are used
+	 */
+	public static ExecutorService newExecutor(boolean virtual, int threads) {
+		if (virtual) {
+			ExecutorService executor = newVirtualThreadExecutor();
+			if (executor != null) {
+				return executor;
+			}
+		}
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "rest-client-async-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	// we compile against java 8 so virtual threads (java 21+) can only be reached through reflection
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+		catch (Exception e) {
+			logger.warn("Could not create a virtual thread executor, falling back to platform threads", e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,597 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import be.nabu.eai.module.http.client.HTTPClientArtifact;
+import be.nabu.eai.module.rest.WebMethod;
+import be.nabu.eai.module.rest.WebResponseType;
+import be.nabu.libs.authentication.api.principals.BasicPrincipal;
+import be.nabu.libs.http.api.WebAuthorizationType;
+import be.nabu.libs.http.client.BasicAuthentication;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.ComplexType;
+import be.nabu.libs.types.binding.api.Window;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeHeader;
+
+/**
+ * The resolved view of a rest client and its (optional) endpoint, compiled once and read on every call.
+ * A plan is immutable, if the client or the endpoint changes a new plan is compiled.
+ */
+public class RESTClientPlan {
+
+	// the configuration instances this plan was compiled from, used to detect reloads
+	private final RESTClientConfiguration configuration;
+	private final RESTEndpointArtifact endpoint;
+	private final RESTEndpointConfiguration endpointConfiguration;
+	private final long endpointVersion;
+
+	private final Charset charset;
+	private final WebResponseType requestType, responseType, configuredResponseType;
+	private final boolean gzip, secure, allowNtlm;
+	private final String host, method;
+	private final WebMethod webMethod;
+	private final WebAuthorizationType preemptiveAuthorizationType;
+	private final HTTPClientArtifact httpClient;
+	private final String username, password;
+	// the preemptive authorization header value for the configured credentials
+	private final String preemptiveAuthorization;
+	private final boolean validateInput, validateOutput, sanitizeOutput, outputAsStream, streamInput, ignoreRootIfArrayWrapper, lenient;
+	private final ComplexType output;
+	private final String securityType, securityContext;
+	private final boolean omitContentLengthIfEmpty;
+	private final String userAgent, apiHeaderName, apiHeaderKey, apiQueryName, apiQueryKey;
+	private final String basePath, path;
+	// the full path (including the base path of the endpoint) used when no endpoint is passed in at runtime
+	private final RESTPathTemplate pathTemplate;
+	// the configured path relative to an endpoint that is passed in at runtime
+	private final RESTPathTemplate relativePathTemplate;
+	private final RESTQueryEncoder queryEncoder;
+	private final RESTHeaderEncoder headerEncoder;
+	// the static headers are created once and shared by all requests, they are never modified
+	private final Header acceptHeader, hostHeader, userAgentHeader, apiKeyHeader;
+	// the windows to apply when unmarshalling, the window instances themselves are created per call
+	private final String [] windowPaths;
+	private final int [] windowSizes, windowBatchSizes;
+	// the options for the pooled bindings
+	private final int marshalOptions, unmarshalOptions;
+	// the fixed api key query parameter (if any) in its final form
+	private final String apiQueryParameter;
+	// response caching only applies to calls that read a parsed response without side effects
+	private final boolean cacheResponses;
+	private final int cacheMaxEntries;
+	private final long cacheMaxSize;
+	private final boolean coalesceRequests;
+	private final long coalesceTimeout;
+	// the digest of the configured password for the cache and coalescing keys
+	private final String credentialDigest;
+	private final int batchConcurrency;
+	// the size of the last marshalled request, used to take a buffer that is big enough from the start
+	private volatile int requestSizeHint;
+	// null if calls are not retried
+	private final RESTRetryPolicy retryPolicy;
+	// null if there is no circuit breaker
+	private final RESTCircuitBreaker.Settings circuitBreaker;
+	// null if there is no rate limit, this is only configured on the endpoint
+	private final RESTRateLimiter.Settings rateLimit;
+	// whether we pace the calls according to the quota reported by the server and how long a call can be delayed for that
+	private final boolean adaptiveRateLimit;
+	private final long adaptiveRateLimitMaxWait;
+	// null if the concurrent calls to the endpoint are not limited
+	private final RESTBulkhead.Settings bulkhead;
+	// null if there is no adaptive concurrency limit
+	private final RESTConcurrencyLimiter.Settings adaptiveConcurrency;
+	// null if the calls go to the actual server
+	private final RESTStubServer.Mode stubMode;
+	// only set when replaying
+	private final RESTStubServer.Settings stub;
+	private final int errorBodyMaxSize;
+
+	private RESTClientPlan(RESTClientArtifact artifact) {
+		configuration = artifact.getConfig();
+		endpoint = configuration.getEndpoint();
+		endpointConfiguration = endpoint == null ? null : endpoint.getConfig();
+		endpointVersion = endpoint == null ? 0 : endpoint.getVersion();
+
+		charset = configuration.getCharset() != null ? Charset.forName(configuration.getCharset()) :
+			(endpointConfiguration == null || endpointConfiguration.getCharset() == null ? Charset.defaultCharset() : endpointConfiguration.getCharset());
+
+		requestType = configuration.getRequestType() == null && endpointConfiguration != null ? endpointConfiguration.getRequestType() : configuration.getRequestType();
+
+		configuredResponseType = configuration.getResponseType();
+		WebResponseType responseType = configuredResponseType == null && endpointConfiguration != null ? endpointConfiguration.getResponseType() : configuredResponseType;
+		this.responseType = responseType == null ? WebResponseType.XML : responseType;
+
+		if (configuration.getGzip() != null) {
+			gzip = configuration.getGzip();
+		}
+		else if (endpointConfiguration != null && endpointConfiguration.getGzip() != null) {
+			gzip = endpointConfiguration.getGzip();
+		}
+		else {
+			gzip = false;
+		}
+
+		if (configuration.getSecure() != null) {
+			secure = configuration.getSecure();
+		}
+		else if (endpointConfiguration != null && endpointConfiguration.getSecure() != null) {
+			secure = endpointConfiguration.getSecure();
+		}
+		else {
+			secure = false;
+		}
+
+		host = configuration.getHost() == null && endpointConfiguration != null ? endpointConfiguration.getHost() : configuration.getHost();
+
+		webMethod = configuration.getMethod();
+		method = webMethod == null ? "GET" : webMethod.toString();
+
+		preemptiveAuthorizationType = configuration.getPreemptiveAuthorizationType() == null && endpointConfiguration != null ? endpointConfiguration.getPreemptiveAuthorizationType() : configuration.getPreemptiveAuthorizationType();
+		// currently if preemptive is filled in, you can't do ntlm, only basic & bearer both of which don't support domain
+		allowNtlm = configuration.getPreemptiveAuthorizationType() == null && (endpointConfiguration == null || endpointConfiguration.getPreemptiveAuthorizationType() == null);
+
+		httpClient = configuration.getHttpClient() == null && endpointConfiguration != null ? endpointConfiguration.getHttpClient() : configuration.getHttpClient();
+		username = configuration.getUsername() == null && endpointConfiguration != null ? endpointConfiguration.getUsername() : configuration.getUsername();
+		password = configuration.getPassword() == null && endpointConfiguration != null ? endpointConfiguration.getPassword() : configuration.getPassword();
+		if (username != null && preemptiveAuthorizationType == WebAuthorizationType.BASIC) {
+			final String username = this.username, password = this.password;
+			preemptiveAuthorization = new BasicAuthentication().authenticate(new BasicPrincipal() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				public String getName() {
+					return username;
+				}
+				@Override
+				public String getPassword() {
+					return password;
+				}
+			}, "basic");
+		}
+		else if (username != null && preemptiveAuthorizationType == WebAuthorizationType.BEARER) {
+			preemptiveAuthorization = "Bearer " + username;
+		}
+		else {
+			preemptiveAuthorization = null;
+		}
+
+		validateInput = configuration.getValidateInput() != null && configuration.getValidateInput();
+		validateOutput = configuration.getValidateOutput() != null && configuration.getValidateOutput();
+		sanitizeOutput = configuration.getSanitizeOutput() != null && configuration.getSanitizeOutput();
+		outputAsStream = configuration.getOutputAsStream() != null && configuration.getOutputAsStream();
+		streamInput = configuration.getStreamInput() != null && configuration.getStreamInput();
+		ignoreRootIfArrayWrapper = configuration.isIgnoreRootIfArrayWrapper();
+		lenient = configuration.isLenient();
+		output = (ComplexType) configuration.getOutput();
+		List<String> windowPaths = new ArrayList<String>();
+		List<Integer> windowSizes = new ArrayList<Integer>(), windowBatchSizes = new ArrayList<Integer>();
+		if (configuration.getWindows() != null && !configuration.getWindows().trim().isEmpty()) {
+			// each window is defined as "path:size" or "path:size:batchSize"
+			for (String window : configuration.getWindows().trim().split("[\\s,]+")) {
+				String [] parts = window.split(":");
+				if (parts.length < 2 || parts.length > 3) {
+					throw new IllegalArgumentException("Invalid window definition '" + window + "', expecting 'path:size' or 'path:size:batchSize'");
+				}
+				// the path is relative to the output content
+				windowPaths.add(parts[0].startsWith("content/") ? parts[0].substring("content/".length()) : parts[0]);
+				windowSizes.add(parseWindowSize(window, parts[1]));
+				windowBatchSizes.add(parts.length == 3 ? parseWindowSize(window, parts[2]) : 1);
+			}
+		}
+		this.windowPaths = windowPaths.toArray(new String[windowPaths.size()]);
+		this.windowSizes = new int[windowSizes.size()];
+		this.windowBatchSizes = new int[windowBatchSizes.size()];
+		for (int i = 0; i < this.windowPaths.length; i++) {
+			this.windowSizes[i] = windowSizes.get(i);
+			this.windowBatchSizes[i] = windowBatchSizes.get(i);
+		}
+		marshalOptions = (ignoreRootIfArrayWrapper ? RESTBindingCache.IGNORE_ROOT_IF_ARRAY_WRAPPER : 0) | (WebMethod.PATCH.equals(webMethod) ? RESTBindingCache.EXPLICIT_NULL_VALUES : 0);
+		unmarshalOptions = (ignoreRootIfArrayWrapper ? RESTBindingCache.IGNORE_ROOT_IF_ARRAY_WRAPPER : 0) | (lenient ? RESTBindingCache.LENIENT : 0);
+
+		securityType = endpointConfiguration == null ? null : endpointConfiguration.getSecurityType();
+		securityContext = endpointConfiguration == null ? null : endpointConfiguration.getSecurityContext();
+		omitContentLengthIfEmpty = endpointConfiguration != null && endpointConfiguration.isOmitContentLengthIfEmpty();
+
+		userAgent = endpointConfiguration == null ? null : endpointConfiguration.getUserAgent();
+		apiHeaderName = endpointConfiguration == null ? null : endpointConfiguration.getApiHeaderName();
+		apiHeaderKey = endpointConfiguration == null ? null : endpointConfiguration.getApiHeaderKey();
+		apiQueryName = endpointConfiguration == null ? null : endpointConfiguration.getApiQueryName();
+		apiQueryKey = endpointConfiguration == null ? null : endpointConfiguration.getApiQueryKey();
+
+		apiQueryParameter = apiQueryKey == null ? null : (apiQueryName == null ? "apiKey" : apiQueryName) + "=" + apiQueryKey;
+		queryEncoder = new RESTQueryEncoder(artifact.getQuery());
+		headerEncoder = new RESTHeaderEncoder(artifact.getRequestHeader());
+		acceptHeader = new MimeHeader("Accept", this.responseType.getMimeType());
+		hostHeader = new MimeHeader("Host", host);
+		userAgentHeader = userAgent == null ? null : new MimeHeader("User-Agent", userAgent);
+		apiKeyHeader = apiHeaderKey == null ? null : new MimeHeader(apiHeaderName == null ? "apiKey" : apiHeaderName, apiHeaderKey);
+
+		Boolean cacheResponses = configuration.getCacheResponses() == null && endpointConfiguration != null ? endpointConfiguration.getCacheResponses() : configuration.getCacheResponses();
+		this.cacheResponses = cacheResponses != null && cacheResponses && (webMethod == null || webMethod == WebMethod.GET) && !outputAsStream && !isWindowed();
+		Integer cacheMaxEntries = configuration.getCacheMaxEntries() == null && endpointConfiguration != null ? endpointConfiguration.getCacheMaxEntries() : configuration.getCacheMaxEntries();
+		this.cacheMaxEntries = cacheMaxEntries == null ? 1000 : cacheMaxEntries;
+		Long cacheMaxSize = configuration.getCacheMaxSize() == null && endpointConfiguration != null ? endpointConfiguration.getCacheMaxSize() : configuration.getCacheMaxSize();
+		this.cacheMaxSize = cacheMaxSize == null ? 10l * 1024 * 1024 : cacheMaxSize;
+		Integer retryAttempts = configuration.getRetryAttempts() == null && endpointConfiguration != null ? endpointConfiguration.getRetryAttempts() : configuration.getRetryAttempts();
+		if (retryAttempts != null && retryAttempts > 0) {
+			String retryStatusCodes = configuration.getRetryStatusCodes() == null && endpointConfiguration != null ? endpointConfiguration.getRetryStatusCodes() : configuration.getRetryStatusCodes();
+			String retryExceptions = configuration.getRetryExceptions() == null && endpointConfiguration != null ? endpointConfiguration.getRetryExceptions() : configuration.getRetryExceptions();
+			Boolean retryNonIdempotent = configuration.getRetryNonIdempotent() == null && endpointConfiguration != null ? endpointConfiguration.getRetryNonIdempotent() : configuration.getRetryNonIdempotent();
+			Long retryInitialDelay = configuration.getRetryInitialDelay() == null && endpointConfiguration != null ? endpointConfiguration.getRetryInitialDelay() : configuration.getRetryInitialDelay();
+			Long retryMaxDelay = configuration.getRetryMaxDelay() == null && endpointConfiguration != null ? endpointConfiguration.getRetryMaxDelay() : configuration.getRetryMaxDelay();
+			Double retryBudget = configuration.getRetryBudget() == null && endpointConfiguration != null ? endpointConfiguration.getRetryBudget() : configuration.getRetryBudget();
+			retryPolicy = new RESTRetryPolicy(retryAttempts, retryStatusCodes, retryExceptions, retryNonIdempotent != null && retryNonIdempotent,
+				retryInitialDelay == null ? 100 : retryInitialDelay, retryMaxDelay == null ? 10000 : retryMaxDelay, retryBudget == null ? 0.2 : retryBudget);
+		}
+		else {
+			retryPolicy = null;
+		}
+		Boolean circuitBreaker = configuration.getCircuitBreaker() == null && endpointConfiguration != null ? endpointConfiguration.getCircuitBreaker() : configuration.getCircuitBreaker();
+		if (circuitBreaker != null && circuitBreaker) {
+			Double circuitFailureRate = configuration.getCircuitFailureRate() == null && endpointConfiguration != null ? endpointConfiguration.getCircuitFailureRate() : configuration.getCircuitFailureRate();
+			Double circuitSlowCallRate = configuration.getCircuitSlowCallRate() == null && endpointConfiguration != null ? endpointConfiguration.getCircuitSlowCallRate() : configuration.getCircuitSlowCallRate();
+			Long circuitSlowCallDuration = configuration.getCircuitSlowCallDuration() == null && endpointConfiguration != null ? endpointConfiguration.getCircuitSlowCallDuration() : configuration.getCircuitSlowCallDuration();
+			Integer circuitMinimumCalls = configuration.getCircuitMinimumCalls() == null && endpointConfiguration != null ? endpointConfiguration.getCircuitMinimumCalls() : configuration.getCircuitMinimumCalls();
+			Long circuitOpenDuration = configuration.getCircuitOpenDuration() == null && endpointConfiguration != null ? endpointConfiguration.getCircuitOpenDuration() : configuration.getCircuitOpenDuration();
+			this.circuitBreaker = new RESTCircuitBreaker.Settings(circuitFailureRate == null ? 0.5 : circuitFailureRate, circuitSlowCallRate == null ? 0 : circuitSlowCallRate,
+				circuitSlowCallDuration == null ? 5000 : circuitSlowCallDuration, circuitMinimumCalls == null ? 20 : circuitMinimumCalls, circuitOpenDuration == null ? 30000 : circuitOpenDuration);
+		}
+		else {
+			this.circuitBreaker = null;
+		}
+		if (endpointConfiguration != null && endpointConfiguration.getRateLimit() != null && endpointConfiguration.getRateLimit() > 0) {
+			rateLimit = new RESTRateLimiter.Settings(endpointConfiguration.getRateLimit(),
+				endpointConfiguration.getRateLimitPeriod() == null ? 1000 : endpointConfiguration.getRateLimitPeriod(),
+				endpointConfiguration.getRateLimitBurst() == null ? endpointConfiguration.getRateLimit() : endpointConfiguration.getRateLimitBurst(),
+				endpointConfiguration.getRateLimitMaxWait() == null ? 0 : endpointConfiguration.getRateLimitMaxWait(),
+				endpointConfiguration.getRateLimitPerCredential() != null && endpointConfiguration.getRateLimitPerCredential());
+		}
+		else {
+			rateLimit = null;
+		}
+		adaptiveRateLimit = endpointConfiguration != null && endpointConfiguration.getAdaptiveRateLimit() != null && endpointConfiguration.getAdaptiveRateLimit();
+		adaptiveRateLimitMaxWait = endpointConfiguration == null || endpointConfiguration.getRateLimitMaxWait() == null ? 30000 : endpointConfiguration.getRateLimitMaxWait();
+		if (endpointConfiguration != null && endpointConfiguration.getMaxInFlight() != null && endpointConfiguration.getMaxInFlight() > 0) {
+			bulkhead = new RESTBulkhead.Settings(endpointConfiguration.getMaxInFlight(),
+				endpointConfiguration.getMaxQueued() == null ? 100 : endpointConfiguration.getMaxQueued(),
+				endpointConfiguration.getQueueTimeout() == null ? 30000 : endpointConfiguration.getQueueTimeout());
+		}
+		else {
+			bulkhead = null;
+		}
+		if (endpointConfiguration != null && endpointConfiguration.getAdaptiveConcurrency() != null) {
+			adaptiveConcurrency = new RESTConcurrencyLimiter.Settings(endpointConfiguration.getAdaptiveConcurrency(),
+				endpointConfiguration.getAdaptiveConcurrencyInitial() == null ? 20 : endpointConfiguration.getAdaptiveConcurrencyInitial(),
+				endpointConfiguration.getAdaptiveConcurrencyMinimum() == null ? 1 : endpointConfiguration.getAdaptiveConcurrencyMinimum(),
+				endpointConfiguration.getAdaptiveConcurrencyMaximum() == null ? 200 : endpointConfiguration.getAdaptiveConcurrencyMaximum());
+		}
+		else {
+			adaptiveConcurrency = null;
+		}
+		Integer errorBodyMaxSize = configuration.getErrorBodyMaxSize() == null && endpointConfiguration != null ? endpointConfiguration.getErrorBodyMaxSize() : configuration.getErrorBodyMaxSize();
+		this.errorBodyMaxSize = errorBodyMaxSize == null || errorBodyMaxSize < 0 ? 16384 : errorBodyMaxSize;
+		stubMode = configuration.getStubMode();
+		if (stubMode != null) {
+			stub = new RESTStubServer.Settings(configuration.getStubLatency() == null ? 0 : configuration.getStubLatency(),
+				configuration.getStubLatencyJitter() == null ? 0 : configuration.getStubLatencyJitter(),
+				configuration.getStubRecordedLatency() != null && configuration.getStubRecordedLatency(),
+				configuration.getStubBandwidth() == null ? 0 : configuration.getStubBandwidth(),
+				configuration.getStubThreads() == null ? 32 : configuration.getStubThreads(),
+				apiQueryName == null && apiQueryKey != null ? "apiKey" : apiQueryName,
+				apiHeaderName == null && apiHeaderKey != null ? "apiKey" : apiHeaderName);
+		}
+		else {
+			stub = null;
+		}
+		coalesceTimeout = configuration.getCoalesceTimeout() == null || configuration.getCoalesceTimeout() <= 0 ? 60000 : configuration.getCoalesceTimeout();
+		credentialDigest = password == null ? null : RESTResponseCache.digest(password);
+		batchConcurrency = configuration.getBatchConcurrency() == null || configuration.getBatchConcurrency() < 1 ? 8 : configuration.getBatchConcurrency();
+		coalesceRequests = configuration.getCoalesceRequests() != null && configuration.getCoalesceRequests() && (webMethod == null || webMethod == WebMethod.GET) && !outputAsStream && !isWindowed();
+
+		basePath = endpointConfiguration == null ? null : endpointConfiguration.getBasePath();
+		path = configuration.getPath();
+		String configuredPath = path;
+		if (configuredPath != null) {
+			if (configuredPath.startsWith("/")) {
+				configuredPath = configuredPath.substring(1);
+			}
+			relativePathTemplate = RESTPathTemplate.parse(configuredPath);
+			StringBuilder builder = new StringBuilder("/");
+			if (basePath != null) {
+				// remove doubles we might have introduced with the hard concatting
+				RESTPathTemplate.appendCollapsed(builder, basePath);
+			}
+			if (builder.charAt(builder.length() - 1) != '/') {
+				builder.append('/');
+			}
+			builder.append(configuredPath);
+			pathTemplate = RESTPathTemplate.parse(builder.toString());
+		}
+		else {
+			relativePathTemplate = null;
+			pathTemplate = null;
+		}
+	}
+
+	public static RESTClientPlan compile(RESTClientArtifact artifact) {
+		return new RESTClientPlan(artifact);
+	}
+
+	/**
+	 * Whether this plan still reflects the configuration of the artifact, it is only outdated if the client or endpoint was reloaded or the endpoint was saved
+	 */
+	private static int parseWindowSize(String window, String size) {
+		try {
+			int parsed = Integer.parseInt(size);
+			if (parsed > 0) {
+				return parsed;
+			}
+		}
+		catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("Invalid size '" + size + "' in window definition '" + window + "' of property 'windows', expecting a positive number");
+	}
+
+	public boolean isCurrent(RESTClientArtifact artifact) {
+		RESTClientConfiguration configuration = artifact.getConfig();
+		if (configuration != this.configuration || configuration.getEndpoint() != endpoint || artifact.getQuery() != queryEncoder.getType() || artifact.getRequestHeader() != headerEncoder.getType()) {
+			return false;
+		}
+		return endpoint == null || (endpoint.getConfig() == endpointConfiguration && endpoint.getVersion() == endpointVersion);
+	}
+
+	/**
+	 * Renders the target path, the builder is sized so the query can be appended without growing it in most cases
+	 */
+	public StringBuilder renderPath(URI uri, ComplexContent pathContent) {
+		if (uri == null && pathTemplate != null) {
+			StringBuilder builder = new StringBuilder(pathTemplate.getEstimatedLength() + 64);
+			pathTemplate.render(builder, pathContent);
+			return builder;
+		}
+		String root = uri == null || uri.getPath() == null ? "/" : uri.getPath();
+		StringBuilder builder = new StringBuilder(root.length() + (basePath == null ? 0 : basePath.length()) + (relativePathTemplate == null ? 0 : relativePathTemplate.getEstimatedLength()) + 64);
+		if (basePath != null) {
+			RESTPathTemplate.appendCollapsed(builder, root);
+			RESTPathTemplate.appendCollapsed(builder, "/");
+			RESTPathTemplate.appendCollapsed(builder, basePath);
+		}
+		else {
+			builder.append(root);
+		}
+		if (relativePathTemplate != null) {
+			if (builder.length() == 0 || builder.charAt(builder.length() - 1) != '/') {
+				builder.append('/');
+			}
+			// the runtime root may contain placeholders as well
+			if (pathContent != null && builder.indexOf("{") >= 0) {
+				String unresolved = builder.toString();
+				builder.setLength(0);
+				RESTPathTemplate.parse(unresolved).render(builder, pathContent);
+			}
+			relativePathTemplate.render(builder, pathContent);
+			if (builder.length() == 0 || builder.charAt(0) != '/') {
+				builder.insert(0, '/');
+			}
+		}
+		return builder;
+	}
+	
+	public RESTEndpointArtifact getEndpoint() {
+		return endpoint;
+	}
+	public Charset getCharset() {
+		return charset;
+	}
+	public WebResponseType getRequestType() {
+		return requestType;
+	}
+	public WebResponseType getResponseType() {
+		return responseType;
+	}
+	// the response type as configured on the client itself, this overrides the content type sent back by the server
+	public WebResponseType getConfiguredResponseType() {
+		return configuredResponseType;
+	}
+	public boolean isGzip() {
+		return gzip;
+	}
+	public boolean isSecure() {
+		return secure;
+	}
+	public boolean isAllowNtlm() {
+		return allowNtlm;
+	}
+	public String getHost() {
+		return host;
+	}
+	public String getPath() {
+		return path;
+	}
+	public String getMethod() {
+		return method;
+	}
+	public WebMethod getWebMethod() {
+		return webMethod;
+	}
+	public WebAuthorizationType getPreemptiveAuthorizationType() {
+		return preemptiveAuthorizationType;
+	}
+	public HTTPClientArtifact getHttpClient() {
+		return httpClient;
+	}
+	public String getUsername() {
+		return username;
+	}
+	public String getPassword() {
+		return password;
+	}
+	public String getPreemptiveAuthorization() {
+		return preemptiveAuthorization;
+	}
+	public boolean isValidateInput() {
+		return validateInput;
+	}
+	public boolean isValidateOutput() {
+		return validateOutput;
+	}
+	public boolean isSanitizeOutput() {
+		return sanitizeOutput;
+	}
+	public boolean isOutputAsStream() {
+		return outputAsStream;
+	}
+	public boolean isStreamInput() {
+		return streamInput;
+	}
+	public boolean isIgnoreRootIfArrayWrapper() {
+		return ignoreRootIfArrayWrapper;
+	}
+	public boolean isLenient() {
+		return lenient;
+	}
+	public ComplexType getOutput() {
+		return output;
+	}
+	public boolean isWindowed() {
+		return windowPaths.length > 0;
+	}
+	public Window [] newWindows() {
+		Window [] windows = new Window[windowPaths.length];
+		for (int i = 0; i < windows.length; i++) {
+			windows[i] = new Window(windowPaths[i], windowSizes[i], windowBatchSizes[i]);
+		}
+		return windows;
+	}
+	public int getMarshalOptions() {
+		return marshalOptions;
+	}
+	public int getUnmarshalOptions() {
+		return unmarshalOptions;
+	}
+	public String getSecurityType() {
+		return securityType;
+	}
+	public String getSecurityContext() {
+		return securityContext;
+	}
+	public boolean isOmitContentLengthIfEmpty() {
+		return omitContentLengthIfEmpty;
+	}
+	public String getUserAgent() {
+		return userAgent;
+	}
+	public String getApiHeaderName() {
+		return apiHeaderName;
+	}
+	public String getApiHeaderKey() {
+		return apiHeaderKey;
+	}
+	public String getApiQueryName() {
+		return apiQueryName;
+	}
+	public String getApiQueryKey() {
+		return apiQueryKey;
+	}
+	public String getApiQueryParameter() {
+		return apiQueryParameter;
+	}
+	public RESTQueryEncoder getQueryEncoder() {
+		return queryEncoder;
+	}
+	public RESTHeaderEncoder getHeaderEncoder() {
+		return headerEncoder;
+	}
+	public Header getAcceptHeader() {
+		return acceptHeader;
+	}
+	// the host header for the configured host
+	public Header getHostHeader() {
+		return hostHeader;
+	}
+	public Header getUserAgentHeader() {
+		return userAgentHeader;
+	}
+	// the header for the fixed api key (if any)
+	public Header getApiKeyHeader() {
+		return apiKeyHeader;
+	}
+	public boolean isCacheResponses() {
+		return cacheResponses;
+	}
+	public int getCacheMaxEntries() {
+		return cacheMaxEntries;
+	}
+	public long getCacheMaxSize() {
+		return cacheMaxSize;
+	}
+	public boolean isCoalesceRequests() {
+		return coalesceRequests;
+	}
+	public long getCoalesceTimeout() {
+		return coalesceTimeout;
+	}
+	public String getCredentialDigest() {
+		return credentialDigest;
+	}
+	public int getBatchConcurrency() {
+		return batchConcurrency;
+	}
+	public int getRequestSizeHint() {
+		return requestSizeHint;
+	}
+	void setRequestSizeHint(int requestSizeHint) {
+		this.requestSizeHint = requestSizeHint;
+	}
+	public RESTRetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+	public RESTCircuitBreaker.Settings getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	public RESTRateLimiter.Settings getRateLimit() {
+		return rateLimit;
+	}
+	public boolean isAdaptiveRateLimit() {
+		return adaptiveRateLimit;
+	}
+	public long getAdaptiveRateLimitMaxWait() {
+		return adaptiveRateLimitMaxWait;
+	}
+	public RESTBulkhead.Settings getBulkhead() {
+		return bulkhead;
+	}
+	public RESTConcurrencyLimiter.Settings getAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+	public RESTStubServer.Mode getStubMode() {
+		return stubMode;
+	}
+	public RESTStubServer.Settings getStub() {
+		return stub;
+	}
+	public int getErrorBodyMaxSize() {
+		return errorBodyMaxSize;
+	}
+}
@@ -17,22 +17,21 @@
 
 package be.nabu.eai.module.rest.client;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
-import javax.ws.rs.NotSupportedException;
-
-import nabu.protocols.http.client.Services;
-import be.nabu.eai.module.rest.RESTUtils;
-import be.nabu.eai.module.rest.WebMethod;
 import be.nabu.eai.module.rest.WebResponseType;
 import be.nabu.libs.authentication.api.principals.BasicPrincipal;
-import be.nabu.libs.converter.ConverterFactory;
 import be.nabu.libs.http.api.HTTPRequest;
 import be.nabu.libs.http.api.HTTPResponse;
 import be.nabu.libs.http.api.WebAuthorizationType;
@@ -43,27 +42,14 @@ import be.nabu.libs.http.core.DefaultHTTPRequest;
 import be.nabu.libs.http.core.HTTPRequestAuthenticatorFactory;
 import be.nabu.libs.http.core.HTTPUtils;
 import be.nabu.libs.http.glue.GlueListener;
-import be.nabu.libs.property.ValueUtils;
-import be.nabu.libs.resources.URIUtils;
 import be.nabu.libs.services.api.ExecutionContext;
 import be.nabu.libs.services.api.Service;
 import be.nabu.libs.services.api.ServiceException;
 import be.nabu.libs.services.api.ServiceInstance;
-import be.nabu.libs.types.TypeUtils;
 import be.nabu.libs.types.api.ComplexContent;
 import be.nabu.libs.types.api.ComplexType;
-import be.nabu.libs.types.api.Element;
-import be.nabu.libs.types.api.Marshallable;
-import be.nabu.libs.types.base.CollectionFormat;
 import be.nabu.libs.types.binding.api.MarshallableBinding;
 import be.nabu.libs.types.binding.api.UnmarshallableBinding;
-import be.nabu.libs.types.binding.api.Window;
-import be.nabu.libs.types.binding.form.FormBinding;
-import be.nabu.libs.types.binding.json.JSONBinding;
-import be.nabu.libs.types.binding.xml.XMLBinding;
-import be.nabu.libs.types.map.MapTypeGenerator;
-import be.nabu.libs.types.properties.AliasProperty;
-import be.nabu.libs.types.properties.CollectionFormatProperty;
 import be.nabu.libs.validator.api.Validator;
 import be.nabu.utils.io.IOUtils;
 import be.nabu.utils.io.api.ByteBuffer;
@@ -78,6 +64,8 @@ import be.nabu.utils.mime.impl.PlainMimeEmptyPart;
 
 public class RESTClientServiceInstance implements ServiceInstance {
 
+	private static final Header ACCEPT_GZIP = new MimeHeader("Accept-Encoding", "gzip");
+	
 	private RESTClientArtifact artifact;
 
 	public RESTClientServiceInstance(RESTClientArtifact restClientArtifact) {
@@ -89,33 +77,68 @@ public class RESTClientServiceInstance implements ServiceInstance {
 		return artifact;
 	}
 
-	private String escapeQuery(String value) {
-		return URIUtils.encodeURL(value);
+	/**
+	 * Executes the call on the given executor in a child runtime, the caller is not blocked while the request is sent and the response is parsed
+	 */
+	public CompletableFuture<ComplexContent> executeAsync(final ExecutionContext executionContext, final ComplexContent input, Executor executor) {
+		final CompletableFuture<ComplexContent> future = new CompletableFuture<ComplexContent>();
+		final RESTChildRuntime runtime = new RESTChildRuntime(artifact, executionContext);
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					// no need to do the call if no one is interested anymore
+					if (future.isDone()) {
+						return;
+					}
+					try {
+						future.complete(runtime.run(input));
+					}
+					catch (Throwable e) {
+						future.completeExceptionally(e);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			future.completeExceptionally(new ServiceException("REST-CLIENT-7", "Could not schedule the asynchronous call for: " + artifact.getId(), e));
+		}
+		return future;
+	}
+	
+	private RESTBindingCache.Lease borrowMarshaller(RESTClientPlan plan, WebResponseType requestType, ComplexType type) {
+		// the form binding for requests has always used its own default charset
+		if (requestType == WebResponseType.FORM_ENCODED) {
+			return artifact.getBindings().borrowMarshaller(requestType, type, null, plan.getMarshalOptions());
+		}
+		return artifact.getBindings().borrowMarshaller(requestType == WebResponseType.JSON ? requestType : WebResponseType.XML, type, plan.getCharset(), plan.getMarshalOptions());
 	}
 	
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public ComplexContent execute(ExecutionContext executionContext, ComplexContent input) throws ServiceException {
+		return execute(executionContext, input, artifact.getPlan());
+	}
+	
+	/**
+	 * Executes the call with the given plan, this allows a number of calls (e.g. a batch) to share the same plan
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	ComplexContent execute(ExecutionContext executionContext, ComplexContent input, final RESTClientPlan plan) throws ServiceException {
+		long started = System.nanoTime();
+		RESTBufferOutputStream marshalled = null;
 		try {
+			long marshalDuration = 0;
 			Object object = input == null ? null : input.get("content");
 			URI uri = input == null ? null : (URI) input.get("endpoint");
 			
-			RESTEndpointArtifact endpoint = artifact.getConfig().getEndpoint();
-			
-			if (artifact.getConfiguration().getHost() == null && uri == null && (endpoint == null || endpoint.getConfig().getHost() == null)) {
+			if (plan.getHost() == null && uri == null) {
 				throw new ServiceException("REST-CLIENT-1", "No host configured for: " + artifact.getId());
 			}
-			if (artifact.getConfiguration().getPath() == null && uri == null) {
+			if (plan.getPath() == null && uri == null) {
 				throw new ServiceException("REST-CLIENT-2", "No path configured for: " + artifact.getId());
 			}
 			ModifiablePart part;
-			Charset charset = artifact.getConfiguration().getCharset() != null ? Charset.forName(artifact.getConfiguration().getCharset()) : 
-				(endpoint == null || endpoint.getConfig().getCharset() == null ? Charset.defaultCharset() : endpoint.getConfig().getCharset());
-			
-			WebResponseType requestType = artifact.getConfiguration().getRequestType();
-			if (requestType == null && endpoint != null) {
-				requestType = endpoint.getConfig().getRequestType();
-			}
+			WebResponseType requestType = plan.getRequestType();
 			
 			if (object instanceof InputStream) {
 				part = new PlainMimeContentPart(null, IOUtils.wrap((InputStream) object),
@@ -129,43 +152,62 @@ public class RESTClientServiceInstance implements ServiceInstance {
 				if (requestType == null) {
 					requestType = WebResponseType.XML;
 				}
-				if (artifact.getConfig().getValidateInput() != null && artifact.getConfig().getValidateInput()) {
+				if (plan.isValidateInput()) {
 					Validator validator = ((ComplexContent) object).getType().createValidator();
 					List validations = validator.validate(object);
 					if (validations != null && !validations.isEmpty()) {
 						throw new ServiceException("REST-CLIENT-5", "The input provided to the rest client is invalid: " + validations);
 					}
 				}
-				MarshallableBinding binding;
-				switch(requestType) {
-					case FORM_ENCODED: binding = new FormBinding(((ComplexContent) object).getType()); break;
-					case JSON: 
-						JSONBinding jsonBinding = new JSONBinding(((ComplexContent) object).getType(), charset);
-						jsonBinding.setIgnoreRootIfArrayWrapper(artifact.getConfig().isIgnoreRootIfArrayWrapper());
-						// see below in XML binding
-						jsonBinding.setCamelCaseDashes(true);
-						// for PATCH services we want to explicitly set "null" values for optional fields if we mapped it
-						// TODO: might want to allow the user to set this explicitly for non-PATCH methods, e.g. in case of wrong method usage (PUT vs PATCH)
-						jsonBinding.setMarshalExplicitNullValues(WebMethod.PATCH.equals(artifact.getConfig().getMethod()));
-						binding = jsonBinding;
-					break;
-					default: 
-						XMLBinding xmlBinding = new XMLBinding(((ComplexContent) object).getType(), charset);
-						// we had an instance where the other party was using dashes in the names
-						// it is impossible to model a field name with a dash in it in nabu so it is (currently) acceptable to set this boolean globally
-						// if we ever do need to support dashes, make this configurable, i didn't want to do that at the time of writing because not all bindings support it (atm)
-						xmlBinding.setCamelCaseDashes(true);
-						binding = xmlBinding;
+				final ComplexContent content = (ComplexContent) object;
+				final WebResponseType marshalType = requestType;
+				if (plan.isStreamInput()) {
+					// the content is marshalled while it is being sent, every time the part is read (e.g. for reporting) it is marshalled again
+					part = new RESTContentPart(new RESTContentPart.Source() {
+							private RESTMarshallingInputStream previous;
+							@Override
+							public synchronized InputStream open() throws IOException {
+								// a reopen (e.g. a resend) aborts the marshalling for the previous stream
+								if (previous != null) {
+									previous.close();
+								}
+								previous = new RESTMarshallingInputStream(borrowMarshaller(plan, marshalType, content.getType()), content);
+								return previous;
+							}
+						},
+						new MimeHeader("Content-Type", requestType.getMimeType()),
+						new MimeHeader("Transfer-Encoding", "Chunked")
+					);
+				}
+				else {
+					// the buffer is released once the request has been sent
+					long marshalStarted = System.nanoTime();
+					marshalled = new RESTBufferOutputStream(RESTBufferPool.getInstance(), plan.getRequestSizeHint());
+					RESTBindingCache.Lease lease = borrowMarshaller(plan, requestType, content.getType());
+					try {
+						lease.<MarshallableBinding>getBinding().marshal(marshalled, content);
+					}
+					finally {
+						lease.close();
+					}
+					marshalDuration = System.nanoTime() - marshalStarted;
+					record(plan, RESTMetrics.Phase.MARSHAL, marshalDuration);
+					recordRequestSize(plan, marshalled.size());
+					plan.setRequestSizeHint(marshalled.size());
+					final RESTBufferOutputStream buffer = marshalled;
+					// the part opens the buffer again every time it is read so it is reopenable and can be reported on
+					part = new RESTContentPart(new RESTContentPart.Source() {
+							@Override
+							public InputStream open() throws IOException {
+								InputStream input = buffer.toInputStream();
+								// once the buffer is back in the pool (e.g. reporting after the call) the content is marshalled again
+								return input == null ? new RESTMarshallingInputStream(borrowMarshaller(plan, marshalType, content.getType()), content) : input;
+							}
+						},
+						new MimeHeader("Content-Length", Integer.toString(buffer.size())),
+						new MimeHeader("Content-Type", requestType.getMimeType())
+					);
 				}
-				ByteArrayOutputStream output = new ByteArrayOutputStream();
-				binding.marshal(output, (ComplexContent) object);
-				byte [] content = output.toByteArray();
-				part = new PlainMimeContentPart(null, IOUtils.wrap(content, true), 
-					new MimeHeader("Content-Length", Integer.valueOf(content.length).toString()),
-					new MimeHeader("Content-Type", requestType.getMimeType())
-				);
-				// reopenable parts can be reported on
-				((PlainMimeContentPart) part).setReopenable(true);
 			}
 			else if (object == null) {
 				part = new PlainMimeEmptyPart(null, new MimeHeader("Content-Length", "0"));
@@ -174,57 +216,19 @@ public class RESTClientServiceInstance implements ServiceInstance {
 				throw new ServiceException("REST-CLIENT-3", "Invalid content");
 			}
 			
-			WebResponseType responseType = artifact.getConfiguration().getResponseType();
-			if (responseType == null && endpoint != null) {
-				responseType = endpoint.getConfig().getResponseType();
-			}
-			if (responseType == null) {
-				responseType = WebResponseType.XML;
-			}
-			part.setHeader(new MimeHeader("Accept", responseType.getMimeType()));
+			part.setHeader(plan.getAcceptHeader());
 			
 			Object header = input == null ? null : input.get("header");
 			if (header instanceof ComplexContent) {
-				for (Element<?> element : TypeUtils.getAllChildren(((ComplexContent) header).getType())) {
-					Object values = ((ComplexContent) header).get(element.getName());
-					// nothing to do...
-					if (values == null) {
-						continue;
-					}
-					String alias = ValueUtils.getValue(AliasProperty.getInstance(), element.getProperties());
-					if (alias == null) {
-						alias = RESTUtils.fieldToHeader(element.getName());
-					}
-					// remove previously set content type headers
-					if (alias.equalsIgnoreCase("Content-Type") || alias.equalsIgnoreCase("Accept")) {
-						part.removeHeader(alias);
-					}
-					if (values instanceof Collection) {
-						for (Object value : (Collection<?>) values) {
-							if (value != null) {
-								part.setHeader(new MimeHeader(alias, ConverterFactory.getInstance().getConverter().convert(value, String.class)));
-							}
-						}
-					}
-					else {
-						part.setHeader(new MimeHeader(alias, ConverterFactory.getInstance().getConverter().convert(values, String.class)));
-					}
-					// if we pass in a content length at the application level, unset any transfer encoding
-					// note that it can get re-added if gzip is toggled
-					if (alias.equalsIgnoreCase("Content-Length") && values != null) {
-						part.removeHeader("Transfer-Encoding");
-					}
+				RESTHeaderEncoder headerEncoder = plan.getHeaderEncoder();
+				// the content should always be of the header type of the artifact but we don't want to assume
+				if (((ComplexContent) header).getType() != headerEncoder.getType()) {
+					headerEncoder = new RESTHeaderEncoder(((ComplexContent) header).getType());
 				}
+				headerEncoder.encode(part, (ComplexContent) header);
 			}
 
-			boolean gzip = false;
-			if (artifact.getConfiguration().getGzip() != null) {
-				gzip = artifact.getConfiguration().getGzip();
-			}
-			else if (endpoint != null && endpoint.getConfig().getGzip() != null) {
-				gzip = endpoint.getConfig().getGzip();
-			}
-			if (gzip) {
+			if (plan.isGzip()) {
 				Long contentLength = MimeUtils.getContentLength(part.getHeaders());
 				// if we don't have a content length, we are already chunking and want to gzip as well
 				// if we have a content length and it is non-zero, we have content that needs gzipping as well
@@ -237,19 +241,14 @@ public class RESTClientServiceInstance implements ServiceInstance {
 					part.setHeader(new MimeHeader("Transfer-Encoding", "Chunked"));
 				}
 				// always accept gzip in this case
-				part.setHeader(new MimeHeader("Accept-Encoding", "gzip"));
-			}
-			String host = uri == null || uri.getHost() == null ? artifact.getConfig().getHost() : uri.getAuthority();
-			if (host == null && endpoint != null) {
-				host = endpoint.getConfig().getHost();
+				part.setHeader(ACCEPT_GZIP);
 			}
-			part.setHeader(new MimeHeader("Host", host));
+			part.setHeader(uri == null || uri.getHost() == null ? plan.getHostHeader() : new MimeHeader("Host", uri.getAuthority()));
 			
-			final String username = input == null || input.get("authentication/username") == null ? (artifact.getConfiguration().getUsername() == null && endpoint != null ? endpoint.getConfig().getUsername() : artifact.getConfiguration().getUsername()) : (String) input.get("authentication/username");
-			final String password = input == null || input.get("authentication/password") == null ? (artifact.getConfiguration().getPassword() == null && endpoint != null ? endpoint.getConfig().getPassword() : artifact.getConfiguration().getPassword()) : (String) input.get("authentication/password");
+			final String username = input == null || input.get("authentication/username") == null ? plan.getUsername() : (String) input.get("authentication/username");
+			final String password = input == null || input.get("authentication/password") == null ? plan.getPassword() : (String) input.get("authentication/password");
 
-			// currently if preemptive is filled in, you can't do ntlm, only basic & bearer both of which don't support domain
-			boolean allowNtlm = artifact.getConfiguration().getPreemptiveAuthorizationType() == null && (endpoint == null || endpoint.getConfig().getPreemptiveAuthorizationType() == null);
+			boolean allowNtlm = plan.isAllowNtlm();
 			
 			BasicPrincipal principal = null;
 			if (username != null) {
@@ -276,193 +275,63 @@ public class RESTClientServiceInstance implements ServiceInstance {
 				}
 			}
 			
-			String path = uri == null || uri.getPath() == null ? "/" : uri.getPath();
-			if (endpoint != null && endpoint.getConfig().getBasePath() != null) {
-				path += "/" + endpoint.getConfig().getBasePath();
-				path = path.replaceAll("[/]{2,}", "/");
-			}
-			if (artifact.getConfiguration().getPath() != null) {
-				String configuredPath = artifact.getConfig().getPath();
-				if (configuredPath.startsWith("/")) {
-					configuredPath = configuredPath.substring(1);
-				}
-				if (!path.endsWith("/")) {
-					path += "/";
-				}
-				path += configuredPath;
-				ComplexContent pathContent = input == null ? null : (ComplexContent) input.get("path");
-				if (pathContent != null) {
-					for (Element<?> child : pathContent.getType()) {
-						Object value = pathContent.get(child.getName());
-						String stringified = "";
-						if (value != null) {
-							if (value instanceof String) {
-								stringified = (String) value;
-							}
-							else if (child.getType() instanceof Marshallable) {
-								stringified = ((Marshallable) child.getType()).marshal(value, child.getProperties());
-							}
-							else {
-								stringified = ConverterFactory.getInstance().getConverter().convert(value, String.class);
-							}
-						}
-						path = path.replaceAll("\\{[\\s]*" + child.getName() + "\\b[^}]*\\}", value == null ? "" : stringified);
-					}
-				}
-				if (!path.startsWith("/")) {
-					path = "/" + path;
-				}
-			}
+			StringBuilder target = plan.renderPath(uri, input == null ? null : (ComplexContent) input.get("path"));
 			
 			ComplexContent queryContent = input == null ? null : (ComplexContent) input.get("query");
-			boolean firstQuery = path.indexOf('?') < 0;
+			boolean firstQuery = target.indexOf("?") < 0;
 			if (queryContent != null) {
-				for (Element<?> element : queryContent.getType()) {
-					Object value = queryContent.get(element.getName());
-					
-					if (value != null) {
-						String name = ValueUtils.getValue(AliasProperty.getInstance(), element.getProperties());
-						if (name == null) {
-							name = element.getName();
-						}
-						if (value instanceof Iterable) {
-							CollectionFormat collectionFormat = ValueUtils.getValue(CollectionFormatProperty.getInstance(), element.getProperties());
-							boolean firstValue = true;
-							for (Object single : (Iterable<?>) value) {
-								if (single == null) {
-									continue;
-								}
-								else if (single instanceof ComplexContent) {
-									// TODO: in openapi 3 there are rules for serializing complex content
-									throw new NotSupportedException("Complex content is not yet supported in the query parameter");
-								}
-								if (firstValue) {
-									if (firstQuery) {
-										firstQuery = false;
-										path += "?";
-									}
-									else {
-										path += "&";
-									}
-									// need to start with ";"
-									if (CollectionFormat.MATRIX_IMPLODE.equals(collectionFormat)) {
-										path += ";";
-										// the rest is CSV compatible for arrays
-										collectionFormat = CollectionFormat.CSV;
-									}
-									else if (CollectionFormat.MATRIX_EXPLODE.equals(collectionFormat)) {
-										path += ";";
-										collectionFormat = CollectionFormat.MULTI;
-									}
-									// for label formatting, we don't need the actual key
-									if (CollectionFormat.LABEL.equals(collectionFormat)) {
-										path += ".";
-									}
-									else {
-										path += escapeQuery(name) + "=";
-									}
-									// if it is multi, we want to keep appending the values as key=value
-									firstValue = CollectionFormat.MULTI.equals(collectionFormat);
-								}
-								else {
-									path += (collectionFormat == null ? CollectionFormat.CSV : collectionFormat).getCharacter();
-								}
-								String stringified = "";
-								if (single != null) {
-									if (single instanceof String) {
-										stringified = (String) single;
-									}
-									else if (element.getType() instanceof Marshallable) {
-										stringified = ((Marshallable) element.getType()).marshal(single, element.getProperties());
-									}
-									else {
-										stringified = ConverterFactory.getInstance().getConverter().convert(single, String.class);
-									}
-								}
-								path += escapeQuery(stringified);
-							}
-						}
-						else if (value instanceof ComplexContent) {
-							// TODO: in openapi 3 there are rules for serializing complex content
-							throw new NotSupportedException("Complex content is not yet supported in the query parameter");
-						}
-						else {
-							if (firstQuery) {
-								firstQuery = false;
-								path += "?";
-							}
-							else {
-								path += "&";
-							}
-							path += escapeQuery(name) + "=" + escapeQuery(value instanceof String ? value.toString() : ConverterFactory.getInstance().getConverter().convert(value, String.class));
-						}
-					}
+				RESTQueryEncoder queryEncoder = plan.getQueryEncoder();
+				// the content should always be of the query type of the artifact but we don't want to assume
+				if (queryContent.getType() != queryEncoder.getType()) {
+					queryEncoder = new RESTQueryEncoder(queryContent.getType());
 				}
+				firstQuery = queryEncoder.encode(target, queryContent, firstQuery);
 			}
 			// if we have an api query key, inject it
-			if (endpoint != null && endpoint.getConfig().getApiQueryKey() != null) {
-				String apiQueryName = endpoint.getConfig().getApiQueryName();
-				if (apiQueryName == null) {
-					apiQueryName = "apiKey";
-				}
-				if (firstQuery) {
-					firstQuery = false;
-					path += "?";
-				}
-				else {
-					path += "&";
-				}
-				path += apiQueryName + "=" + endpoint.getConfig().getApiQueryKey();
+			if (plan.getApiQueryParameter() != null) {
+				target.append(firstQuery ? '?' : '&').append(plan.getApiQueryParameter());
+				firstQuery = false;
 			}
-			else if (endpoint != null && endpoint.getConfig().getApiQueryName() != null && endpoint.getConfig().getApiQueryKey() == null) {
+			else if (plan.getApiQueryName() != null) {
 				String apiQueryKey = input == null ? null : (String) input.get("apiQueryKey");
-				if (firstQuery) {
-					firstQuery = false;
-					path += "?";
-				}
-				else {
-					path += "&";
-				}
-				path += endpoint.getConfig().getApiQueryName() + "=" + apiQueryKey;
+				target.append(firstQuery ? '?' : '&').append(plan.getApiQueryName()).append('=').append(apiQueryKey);
+				firstQuery = false;
 			}
+			String path = target.toString();
 			
-			if (endpoint != null && endpoint.getConfig().getUserAgent() != null) {
-				part.setHeader(new MimeHeader("User-Agent", endpoint.getConfig().getUserAgent()));
+			if (plan.getUserAgentHeader() != null) {
+				part.setHeader(plan.getUserAgentHeader());
 			}
 			// if we have an api header key, inject it
-			if (endpoint != null && endpoint.getConfig().getApiHeaderKey() != null) {
-				String apiHeaderName = endpoint.getConfig().getApiHeaderName();
-				if (apiHeaderName == null) {
-					apiHeaderName = "apiKey";
-				}
-				part.setHeader(new MimeHeader(apiHeaderName, endpoint.getConfig().getApiHeaderKey()));
+			if (plan.getApiKeyHeader() != null) {
+				part.setHeader(plan.getApiKeyHeader());
 			}
 			// if we have a header configured in the endpoint but no fixed value, you have to pass it at runtime
-			else if (endpoint != null && endpoint.getConfig().getApiHeaderName() != null && endpoint.getConfig().getApiHeaderKey() == null) {
+			else if (plan.getApiHeaderName() != null) {
 				String apiHeaderKey = input == null ? null : (String) input.get("apiHeaderKey");
 				if (apiHeaderKey != null) {
-					part.setHeader(new MimeHeader(endpoint.getConfig().getApiHeaderName(), apiHeaderKey));	
+					part.setHeader(new MimeHeader(plan.getApiHeaderName(), apiHeaderKey));	
 				}
 			}
 			
-			HTTPRequest request = new DefaultHTTPRequest(
-				artifact.getConfiguration().getMethod() == null ? "GET" : artifact.getConfiguration().getMethod().toString(),
-				path,
-				part);
+			HTTPRequest request = new DefaultHTTPRequest(plan.getMethod(), path, part);
 			
-			if (artifact.getConfig().getEndpoint() != null && artifact.getConfig().getEndpoint().getConfig().getSecurityType() != null) {
-				if (!HTTPRequestAuthenticatorFactory.getInstance().getAuthenticator(artifact.getConfig().getEndpoint().getConfig().getSecurityType())
-						.authenticate(request, artifact.getConfig().getEndpoint().getConfig().getSecurityContext(), null, false)) {
+			long authStarted = System.nanoTime();
+			record(plan, RESTMetrics.Phase.BUILD, authStarted - started - marshalDuration);
+			if (plan.getSecurityType() != null) {
+				if (!HTTPRequestAuthenticatorFactory.getInstance().getAuthenticator(plan.getSecurityType())
+						.authenticate(request, plan.getSecurityContext(), null, false)) {
 					throw new IllegalStateException("Could not authenticate the request");
 				}
 			}
 			
-			WebAuthorizationType preemptiveAuthorizationType = artifact.getConfiguration().getPreemptiveAuthorizationType();
-			if (preemptiveAuthorizationType == null && endpoint != null) {
-				preemptiveAuthorizationType = endpoint.getConfig().getPreemptiveAuthorizationType();
-			}
+			WebAuthorizationType preemptiveAuthorizationType = plan.getPreemptiveAuthorizationType();
 			
-			if (preemptiveAuthorizationType != null && principal != null) {
+			// the authorization for the configured credentials is calculated once
+			if (preemptiveAuthorizationType != null && principal != null && plan.getPreemptiveAuthorization() != null && username == plan.getUsername() && password == plan.getPassword()) {
+				request.getContent().setHeader(new MimeHeader(HTTPUtils.SERVER_AUTHENTICATE_RESPONSE, plan.getPreemptiveAuthorization()));
+			}
+			else if (preemptiveAuthorizationType != null && principal != null) {
 				switch(preemptiveAuthorizationType) {
 					case BASIC:
 						request.getContent().setHeader(new MimeHeader(HTTPUtils.SERVER_AUTHENTICATE_RESPONSE, new BasicAuthentication().authenticate(principal, "basic")));
@@ -473,19 +342,12 @@ public class RESTClientServiceInstance implements ServiceInstance {
 				}
 			}
 			
-			boolean isSecure = false;
-			if (uri != null && uri.getScheme() != null) {
-				isSecure = "https".equalsIgnoreCase(uri.getScheme());
-			}
-			else if (artifact.getConfig().getSecure() != null) {
-				isSecure = artifact.getConfig().getSecure();
-			}
-			else if (endpoint != null && endpoint.getConfig().getSecure() != null) {
-				isSecure = endpoint.getConfig().getSecure();
-			}
-			HTTPClient client = Services.getTransactionable(executionContext, input == null ? null : (String) input.get("transactionId"), artifact.getConfiguration().getHttpClient() == null && endpoint != null ? endpoint.getConfig().getHttpClient() : artifact.getConfiguration().getHttpClient()).getClient();
+			record(plan, RESTMetrics.Phase.AUTH, System.nanoTime() - authStarted);
 			
-			if (endpoint != null && endpoint.getConfig().isOmitContentLengthIfEmpty()) {
+			boolean isSecure = uri != null && uri.getScheme() != null ? "https".equalsIgnoreCase(uri.getScheme()) : plan.isSecure();
+			HTTPClient client = artifact.getClient(executionContext, input == null ? null : (String) input.get("transactionId"), plan);
+			
+			if (plan.isOmitContentLengthIfEmpty()) {
 				if (request.getMethod().equalsIgnoreCase("GET")) {
 					Header contentLengthHeader = MimeUtils.getHeader("Content-Length", request.getContent().getHeaders());
 					if (contentLengthHeader != null && "0".equals(contentLengthHeader.getValue())) {
@@ -494,100 +356,395 @@ public class RESTClientServiceInstance implements ServiceInstance {
 				}
 			}
 			
-			HTTPResponse response = client.execute(request, principal, isSecure, true);
+			// requests without content can be shared if the configuration allows it
+			String key = null;
+			if (object == null && (plan.isCacheResponses() || plan.isCoalesceRequests())) {
+				// the digest of the configured password is calculated once
+				String credentialDigest = principal == null || password == null ? null : (password == plan.getPassword() ? plan.getCredentialDigest() : RESTResponseCache.digest(password));
+				key = RESTResponseCache.key(request, principal, credentialDigest, isSecure);
+			}
 			
-			if (response.getCode() < 200 || response.getCode() >= 300) {
-				byte[] content = null;
-				if (response.getContent() instanceof ContentPart) {
-					ReadableContainer<ByteBuffer> readable = ((ContentPart) response.getContent()).getReadable();
-					if (readable != null) {
-						try {
-							content = IOUtils.toBytes(readable);
-						}
-						finally {
-							readable.close();
-						}
+			Object priority = input == null || input.getType().get("priority") == null ? null : input.get("priority");
+			final Guards guards = new Guards(plan, request, principal, isSecure, priority == null ? 0 : (Integer) priority);
+			
+			final String finalKey = key;
+			final WebResponseType finalRequestType = requestType;
+			final BasicPrincipal finalPrincipal = principal;
+			if (key != null && plan.isCoalesceRequests()) {
+				return artifact.getCoalescer().execute(finalKey, plan.getCoalesceTimeout(), new Callable<ComplexContent>() {
+					@Override
+					public ComplexContent call() throws Exception {
+						return RESTClientServiceInstance.this.call(plan, guards, client, request, finalPrincipal, isSecure, finalRequestType, finalKey);
+					}
+				});
+			}
+			return call(plan, guards, client, request, principal, isSecure, requestType, key);
+		}
+		catch (ServiceException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new ServiceException(e);
+		}
+		finally {
+			if (marshalled != null) {
+				marshalled.release();
+			}
+			record(plan, RESTMetrics.Phase.TOTAL, System.nanoTime() - started);
+		}
+	}
+	
+	// the metrics are kept for the client and for its endpoint (if any)
+	private void record(RESTClientPlan plan, RESTMetrics.Phase phase, long nanos) {
+		artifact.getMetrics().record(phase, nanos);
+		if (plan.getEndpoint() != null) {
+			plan.getEndpoint().getMetrics().record(phase, nanos);
+		}
+	}
+	
+	private void recordCode(RESTClientPlan plan, int code) {
+		artifact.getMetrics().recordCode(code);
+		if (plan.getEndpoint() != null) {
+			plan.getEndpoint().getMetrics().recordCode(code);
+		}
+	}
+	
+	private void recordRequestSize(RESTClientPlan plan, long bytes) {
+		artifact.getMetrics().recordRequestSize(bytes);
+		if (plan.getEndpoint() != null) {
+			plan.getEndpoint().getMetrics().recordRequestSize(bytes);
+		}
+	}
+	
+	private void recordResponseSize(RESTClientPlan plan, long bytes) {
+		artifact.getMetrics().recordResponseSize(bytes);
+		if (plan.getEndpoint() != null) {
+			plan.getEndpoint().getMetrics().recordResponseSize(bytes);
+		}
+	}
+	
+	/**
+	 * Sends the request, retrying it according to the retry policy (if any)
+	 */
+	private HTTPResponse send(RESTClientPlan plan, Guards guards, HTTPClient client, HTTPRequest request, BasicPrincipal principal, boolean isSecure) throws Exception {
+		RESTRetryPolicy policy = plan.getRetryPolicy();
+		if (policy == null) {
+			return attempt(plan, guards, client, request, principal, isSecure);
+		}
+		RESTRetryBudget budget = artifact.getRetryBudget();
+		budget.deposit(policy.getBudget());
+		// content that was streamed from an input stream can not be sent again
+		boolean resendable = policy.isRetryable(request.getMethod())
+			&& (request.getContent() == null || request.getContent() instanceof RESTContentPart || request.getContent() instanceof PlainMimeEmptyPart);
+		int retry = 0;
+		while (true) {
+			HTTPResponse response;
+			try {
+				response = attempt(plan, guards, client, request, principal, isSecure);
+			}
+			catch (Exception e) {
+				if (!resendable || retry >= policy.getAttempts() || !policy.isRetryable(e) || !budget.withdraw()) {
+					throw e;
+				}
+				Thread.sleep(policy.getDelay(++retry, null));
+				continue;
+			}
+			if (resendable && retry < policy.getAttempts() && policy.isRetryable(response.getCode())) {
+				Long retryAfter = response.getContent() == null ? null : RESTRetryPolicy.getRetryAfter(response.getContent().getHeaders(), System.currentTimeMillis());
+				// if the server wants us to wait longer than we are willing to, we don't retry
+				if ((retryAfter == null || retryAfter <= policy.getMaxDelay()) && budget.withdraw()) {
+					discard(response);
+					Thread.sleep(policy.getDelay(++retry, retryAfter));
+					continue;
+				}
+			}
+			return response;
+		}
+	}
+	
+	/**
+	 * A single attempt at sending the request: it has to stay within the rate limit and quota, get a slot in the bulkhead, stay within the concurrency limit and get past the circuit breaker
+	 */
+	private HTTPResponse attempt(RESTClientPlan plan, Guards guards, HTTPClient client, HTTPRequest request, BasicPrincipal principal, boolean isSecure) throws Exception {
+		if (guards.limiter != null) {
+			long wait = guards.limiter.reserve(TimeUnit.MILLISECONDS.toNanos(plan.getRateLimit().getMaxWait()));
+			if (wait < 0) {
+				throw new ServiceException("REST-CLIENT-9", "The rate limit for '" + plan.getEndpoint().getId() + "' has been reached, failing fast for: " + artifact.getId());
+			}
+			else if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+		if (guards.quota != null) {
+			long wait = guards.quota.reserve(System.currentTimeMillis());
+			if (wait > plan.getAdaptiveRateLimitMaxWait()) {
+				throw new ServiceException("REST-CLIENT-9", "The quota for '" + plan.getEndpoint().getId() + "' is exhausted until " + new Date(guards.quota.getResetAt()) + ", failing fast for: " + artifact.getId());
+			}
+			else if (wait > 0) {
+				Thread.sleep(wait);
+			}
+		}
+		if (guards.bulkhead != null && !guards.bulkhead.acquire(plan.getBulkhead(), guards.priority)) {
+			throw new ServiceException("REST-CLIENT-10", "Too many concurrent calls to '" + plan.getEndpoint().getId() + "', no slot available for: " + artifact.getId());
+		}
+		try {
+			if (guards.concurrency != null && !guards.concurrency.tryAcquire()) {
+				throw new ServiceException("REST-CLIENT-11", "The adaptive concurrency limit of " + guards.concurrency.getLimit() + " for '" + plan.getEndpoint().getId() + "' has been reached, failing fast for: " + artifact.getId());
+			}
+			long started = System.nanoTime();
+			boolean dropped = true, sent = true;
+			try {
+				HTTPResponse response = attempt(plan, guards.breaker, client, request, principal, isSecure);
+				// these indicate that the server is overloaded
+				dropped = response.getCode() == 429 || response.getCode() == 503 || response.getCode() == 504;
+				if (guards.quota != null && response.getContent() != null) {
+					guards.quota.update(response.getContent().getHeaders(), response.getCode(), System.currentTimeMillis());
+				}
+				return response;
+			}
+			catch (ServiceException e) {
+				// an open circuit says nothing about the round trip time
+				sent = !"REST-CLIENT-8".equals(e.getCode());
+				throw e;
+			}
+			finally {
+				if (guards.concurrency != null) {
+					if (sent) {
+						guards.concurrency.release(System.nanoTime() - started, dropped);
+					}
+					else {
+						guards.concurrency.release();
 					}
 				}
-				throw new ServiceException("REST-CLIENT-" + response.getCode(), "An error occurred on the remote server: [" + response.getCode() + "] " + response.getMessage() + (content == null ? "" : "\n" + new String(content)));
 			}
-			
-			ComplexContent output = artifact.getServiceInterface().getOutputDefinition().newInstance();
-			if (response.getContent() != null) {
-				String responseContentType = artifact.getConfig().getResponseType() == null ? MimeUtils.getContentType(response.getContent().getHeaders()) : artifact.getConfig().getResponseType().getMimeType();
-				if (response.getContent() instanceof ContentPart) {
-					if (artifact.getConfiguration().getOutputAsStream() != null && artifact.getConfiguration().getOutputAsStream()) {
-						output.set("content", IOUtils.toInputStream(((ContentPart) response.getContent()).getReadable()));
+		}
+		finally {
+			if (guards.bulkhead != null) {
+				guards.bulkhead.release(plan.getBulkhead());
+			}
+		}
+	}
+	
+	private HTTPResponse attempt(RESTClientPlan plan, RESTCircuitBreaker breaker, HTTPClient client, HTTPRequest request, BasicPrincipal principal, boolean isSecure) throws Exception {
+		if (breaker == null) {
+			return execute(plan, client, request, principal, isSecure);
+		}
+		long started = System.currentTimeMillis();
+		if (!breaker.tryAcquire(started)) {
+			throw new ServiceException("REST-CLIENT-8", "The circuit for '" + breaker.getName() + "' is open, failing fast for: " + artifact.getId());
+		}
+		boolean failed = true;
+		try {
+			HTTPResponse response = execute(plan, client, request, principal, isSecure);
+			failed = response.getCode() >= 500;
+			return response;
+		}
+		finally {
+			long stopped = System.currentTimeMillis();
+			breaker.record(plan.getCircuitBreaker(), failed, stopped - started, stopped);
+		}
+	}
+	
+	private HTTPResponse execute(RESTClientPlan plan, HTTPClient client, HTTPRequest request, BasicPrincipal principal, boolean isSecure) throws Exception {
+		long started = System.nanoTime();
+		try {
+			HTTPResponse response = client.execute(request, principal, isSecure, true);
+			recordCode(plan, response.getCode());
+			return response;
+		}
+		finally {
+			record(plan, RESTMetrics.Phase.NETWORK, System.nanoTime() - started);
+		}
+	}
+	
+	private void discard(HTTPResponse response) throws IOException {
+		RESTErrorBody.discard(response.getContent());
+	}
+	
+	/**
+	 * Sends the request (or reuses a cached response) and parses the response
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private ComplexContent call(RESTClientPlan plan, Guards guards, HTTPClient client, HTTPRequest request, BasicPrincipal principal, boolean isSecure, WebResponseType requestType, String key) throws Exception {
+		RESTResponseCache.Entry cached = null;
+		String cacheKey = key != null && plan.isCacheResponses() ? key : null;
+		long now = System.currentTimeMillis();
+		if (cacheKey != null) {
+			cached = artifact.getResponseCache().get(cacheKey);
+			if (cached != null) {
+				if (cached.isFresh(now)) {
+					return RESTContentCopier.copy(cached.getOutput());
+				}
+				else if (cached.isRevalidatable()) {
+					if (cached.getEtag() != null) {
+						request.getContent().setHeader(new MimeHeader("If-None-Match", cached.getEtag()));
 					}
-					else if (artifact.getConfiguration().getOutput() != null) {
-						if (responseContentType == null && requestType != null) {
-							responseContentType = requestType.getMimeType();
-						}
-						UnmarshallableBinding binding;
-						if ("application/x-www-form-urlencoded".equalsIgnoreCase(responseContentType)) {
-							binding = new FormBinding((ComplexType) artifact.getConfiguration().getOutput(), charset);
-						}
-						else if ("application/json".equalsIgnoreCase(responseContentType) || "application/javascript".equalsIgnoreCase(responseContentType) || "application/x-javascript".equalsIgnoreCase(responseContentType)
-								|| "application/problem+json".equalsIgnoreCase(responseContentType) || (responseContentType != null && responseContentType.matches("application/[\\w]+\\+json"))) {
-							JSONBinding jsonBinding = new JSONBinding((ComplexType) artifact.getConfiguration().getOutput(), charset);
-							jsonBinding.setIgnoreRootIfArrayWrapper(artifact.getConfig().isIgnoreRootIfArrayWrapper());
-							jsonBinding.setCamelCaseDashes(true);
-							// we allow dynamic types to be generated for parsing reasons but do not allow them to be added back into the type
-							// this necessitates that there is a key value array that can hold them
-							jsonBinding.setAllowDynamicElements(true);
-							jsonBinding.setComplexTypeGenerator(new MapTypeGenerator());
-							if (artifact.getConfig().isLenient()) {
-								jsonBinding.setIgnoreUnknownElements(true);
+					if (cached.getLastModified() != null) {
+						request.getContent().setHeader(new MimeHeader("If-Modified-Since", cached.getLastModified()));
+					}
+				}
+			}
+		}
+		
+		HTTPResponse response = send(plan, guards, client, request, principal, isSecure);
+		
+		// the cached content is still valid
+		if (cached != null && response.getCode() == 304) {
+			long expires = RESTResponseCache.getExpires(response.getContent() == null ? new Header[0] : response.getContent().getHeaders(), now);
+			if (expires < 0) {
+				artifact.getResponseCache().remove(cacheKey);
+			}
+			else {
+				cached.revalidated(expires);
+			}
+			return RESTContentCopier.copy(cached.getOutput());
+		}
+		
+		if (response.getCode() < 200 || response.getCode() >= 300) {
+			throw new RESTClientException(response.getCode(), response.getMessage(), RESTErrorBody.read(response.getContent(), plan.getErrorBodyMaxSize(), plan.getCharset(), artifact.getBindings()));
+		}
+		
+		ComplexContent output = artifact.getServiceInterface().getOutputDefinition().newInstance();
+		// counts the received bytes for the metrics and to limit the size of the response cache
+		RESTCountingInputStream received = null;
+		if (response.getContent() != null) {
+			RESTContentType responseContentType = plan.getConfiguredResponseType() == null ? RESTContentType.resolve(response.getContent().getHeaders()) : RESTContentType.resolve(plan.getConfiguredResponseType().getMimeType());
+			if (response.getContent() instanceof ContentPart) {
+				if (plan.isOutputAsStream()) {
+					output.set("content", IOUtils.toInputStream(((ContentPart) response.getContent()).getReadable()));
+				}
+				else if (plan.getOutput() != null) {
+					if (responseContentType == null && requestType != null) {
+						responseContentType = RESTContentType.resolve(requestType.getMimeType());
+					}
+					WebResponseType responseKind = responseContentType == null ? WebResponseType.XML : responseContentType.getKind();
+					// the charset sent back by the server takes precedence over the configured one
+					Charset responseCharset = responseContentType == null || responseContentType.getCharset() == null ? plan.getCharset() : responseContentType.getCharset();
+					if (response.getCode() != 204) {
+						ReadableContainer<ByteBuffer> readable = ((ContentPart) response.getContent()).getReadable();
+						if (readable != null) {
+							ComplexContent unmarshal;
+							// windowed content is resolved lazily by the binding that created it so it can not be handed back to the pool
+							RESTBindingCache.Lease lease = plan.isWindowed()
+								? artifact.getBindings().createUnmarshaller(responseKind, plan.getOutput(), responseCharset, plan.getUnmarshalOptions())
+								: artifact.getBindings().borrowUnmarshaller(responseKind, plan.getOutput(), responseCharset, plan.getUnmarshalOptions());
+							long unmarshalStarted = System.nanoTime();
+							try {
+								received = new RESTCountingInputStream(IOUtils.toInputStream(readable));
+								unmarshal = lease.<UnmarshallableBinding>getBinding().unmarshal(received, plan.newWindows());
 							}
-							binding = jsonBinding;
-						}
-						else {
-							XMLBinding xmlBinding = new XMLBinding((ComplexType) artifact.getConfiguration().getOutput(), charset);
-							// cfr
-							xmlBinding.setCamelCaseDashes(true);
-							if (artifact.getConfig().isLenient()) {
-								xmlBinding.setIgnoreUndefined(true);
+							finally {
+								lease.close();
+								record(plan, RESTMetrics.Phase.UNMARSHAL, System.nanoTime() - unmarshalStarted);
 							}
-							binding = xmlBinding;
-						}
-						if (response.getCode() != 204) {
-							ReadableContainer<ByteBuffer> readable = ((ContentPart) response.getContent()).getReadable();
-							if (readable != null) {
-								ComplexContent unmarshal = binding.unmarshal(IOUtils.toInputStream(readable), new Window[0]);
-								if (artifact.getConfig().getValidateOutput() != null && artifact.getConfig().getValidateOutput()) {
-									Validator validator = unmarshal.getType().createValidator();
-									List validations = validator.validate(unmarshal);
-									if (validations != null && !validations.isEmpty()) {
-										throw new ServiceException("REST-CLIENT-6", "The returned content from the server is invalid: " + validations);
-									}
-								}
-								if (artifact.getConfiguration().getSanitizeOutput() != null && artifact.getConfiguration().getSanitizeOutput()) {
-									unmarshal = (ComplexContent) GlueListener.sanitize(unmarshal);
+							// windowed content is not read entirely at this point
+							if (!plan.isWindowed()) {
+								recordResponseSize(plan, received.getCount());
+							}
+							if (plan.isValidateOutput()) {
+								long validateStarted = System.nanoTime();
+								Validator validator = unmarshal.getType().createValidator();
+								List validations = validator.validate(unmarshal);
+								record(plan, RESTMetrics.Phase.VALIDATE, System.nanoTime() - validateStarted);
+								if (validations != null && !validations.isEmpty()) {
+									throw new ServiceException("REST-CLIENT-6", "The returned content from the server is invalid: " + validations);
 								}
-								output.set("content", unmarshal);
 							}
-						}
-					}
-				}
-				Element<?> element = output.getType().get("header");
-				if (element != null) {
-					for (Element<?> child : (ComplexType) element.getType()) {
-						Header[] headers = MimeUtils.getHeaders(RESTUtils.fieldToHeader(child.getName()), response.getContent().getHeaders());
-						if (headers != null) {
-							for (int i = 0; i < headers.length; i++) {
-								output.set("header/" + child.getName() + "[" + i + "]", headers[i].getValue());
+							if (plan.isSanitizeOutput()) {
+								long sanitizeStarted = System.nanoTime();
+								unmarshal = (ComplexContent) GlueListener.sanitize(unmarshal);
+								record(plan, RESTMetrics.Phase.SANITIZE, System.nanoTime() - sanitizeStarted);
 							}
+							output.set("content", unmarshal);
 						}
 					}
 				}
 			}
-			return output;
+			RESTResponseHeaderPlan headerPlan = artifact.getResponseHeaderPlan();
+			if (headerPlan != null && output.getType().get("header") != null) {
+				ComplexContent header = headerPlan.extract(response.getContent().getHeaders());
+				if (header != null) {
+					output.set("header", header);
+				}
+			}
 		}
-		catch (ServiceException e) {
-			throw e;
+		if (cacheKey != null && response.getCode() == 200) {
+			Header [] headers = response.getContent() == null ? new Header[0] : response.getContent().getHeaders();
+			long expires = RESTResponseCache.getExpires(headers, now);
+			if (expires < 0) {
+				artifact.getResponseCache().remove(cacheKey);
+			}
+			else {
+				RESTResponseCache.Entry entry = new RESTResponseCache.Entry(output, headers, expires, received == null ? 0 : received.getCount());
+				// a response that is stale immediately and can not be revalidated is of no use
+				if (expires > now || entry.isRevalidatable()) {
+					artifact.getResponseCache().put(cacheKey, entry);
+					// the caller gets its own copy, the cached instance is never handed out
+					output = RESTContentCopier.copy(output);
+				}
+			}
 		}
-		catch (Exception e) {
-			throw new ServiceException(e);
+		return output;
+	}
+	
+	/**
+	 * The credential a call is made with: the api key (if any) or the user
+	 */
+	private static String getCredential(RESTClientPlan plan, HTTPRequest request, BasicPrincipal principal) {
+		String apiHeaderName = plan.getApiHeaderName() == null && plan.getApiHeaderKey() != null ? "apiKey" : plan.getApiHeaderName();
+		if (apiHeaderName != null) {
+			Header header = MimeUtils.getHeader(apiHeaderName, request.getContent().getHeaders());
+			if (header != null && header.getValue() != null) {
+				return header.getValue();
+			}
+		}
+		if (plan.getApiQueryKey() != null) {
+			return plan.getApiQueryKey();
+		}
+		else if (plan.getApiQueryName() != null) {
+			String target = request.getTarget();
+			int index = target.indexOf("?" + plan.getApiQueryName() + "=");
+			if (index < 0) {
+				index = target.indexOf("&" + plan.getApiQueryName() + "=");
+			}
+			if (index >= 0) {
+				int start = index + plan.getApiQueryName().length() + 2;
+				int end = target.indexOf('&', start);
+				return target.substring(start, end < 0 ? target.length() : end);
+			}
+		}
+		return principal == null ? null : principal.getName();
+	}
+	
+	/**
+	 * The shared state that protects the endpoint (or host) from a call, resolved once per call and reused by its retries
+	 */
+	private static class Guards {
+		private RESTCircuitBreaker breaker;
+		private RESTRateLimiter limiter;
+		private RESTQuotaTracker quota;
+		private RESTBulkhead bulkhead;
+		private RESTConcurrencyLimiter concurrency;
+		private int priority;
+		
+		private Guards(RESTClientPlan plan, HTTPRequest request, BasicPrincipal principal, boolean isSecure, int priority) {
+			this.priority = priority;
+			if (plan.getCircuitBreaker() != null) {
+				Header host = MimeUtils.getHeader("Host", request.getContent().getHeaders());
+				breaker = plan.getEndpoint() != null ? plan.getEndpoint().getCircuitBreaker() : RESTCircuitBreaker.getForHost((isSecure ? "https://" : "http://") + (host == null ? null : host.getValue()));
+			}
+			if (plan.getRateLimit() != null) {
+				limiter = plan.getEndpoint().getRateLimiter(plan.getRateLimit().isPerCredential() ? getCredential(plan, request, principal) : null, plan.getRateLimit());
+			}
+			if (plan.isAdaptiveRateLimit()) {
+				quota = plan.getEndpoint().getQuotaTracker(getCredential(plan, request, principal));
+			}
+			if (plan.getBulkhead() != null) {
+				bulkhead = plan.getEndpoint().getBulkhead();
+			}
+			if (plan.getAdaptiveConcurrency() != null) {
+				concurrency = plan.getEndpoint().getConcurrencyLimiter(plan.getAdaptiveConcurrency());
+			}
 		}
 	}
 
@@ -0,0 +1,147 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+/**
+ * Adapts the amount of concurrent calls that are allowed based on the measured round trip times and failures.
+ * AIMD grows the limit by one per round trip while it is being used and cuts it back when calls fail.
+ * The gradient algorithm compares the recent round trip time with the long term one: if calls are getting slower, requests are queueing up at the server and the limit is lowered.
+ */
+public class RESTConcurrencyLimiter {
+
+	public enum Algorithm {
+		AIMD,
+		GRADIENT
+	}
+
+	// the factor the limit is multiplied with when a call fails (aimd)
+	private static final double BACKOFF = 0.9;
+	// how much slower the recent calls can be before the limit is lowered (gradient)
+	private static final double TOLERANCE = 1.5;
+	// the smoothing of the round trip times and the limit
+	private static final double SHORT_ALPHA = 0.1, LONG_ALPHA = 0.01, LIMIT_SMOOTHING = 0.2;
+
+	private final Settings settings;
+	private double limit;
+	private int inFlight;
+	// exponential moving averages of the round trip time in nanoseconds
+	private double shortRtt, longRtt;
+	private long rejected;
+
+	public RESTConcurrencyLimiter(Settings settings) {
+		this.settings = settings;
+		this.limit = Math.max(settings.getMinimum(), Math.min(settings.getMaximum(), settings.getInitial()));
+	}
+
+	public synchronized boolean tryAcquire() {
+		if (inFlight >= (int) limit) {
+			rejected++;
+			return false;
+		}
+		inFlight++;
+		return true;
+	}
+
+	// releases a call that never reached the server, it does not influence the limit
+	public synchronized void release() {
+		inFlight--;
+	}
+
+	/**
+	 * Releases a call that was acquired, a dropped call is one that failed in a way that indicates overload (e.g. a timeout or a 503)
+	 */
+	public synchronized void release(long rtt, boolean dropped) {
+		// whether the limit was actually being used, if not there is no reason to grow it
+		boolean saturated = inFlight * 2 >= limit;
+		inFlight--;
+		if (settings.getAlgorithm() == Algorithm.GRADIENT) {
+			if (!dropped) {
+				shortRtt = shortRtt == 0 ? rtt : shortRtt * (1 - SHORT_ALPHA) + rtt * SHORT_ALPHA;
+				longRtt = longRtt == 0 ? rtt : longRtt * (1 - LONG_ALPHA) + rtt * LONG_ALPHA;
+				// if the long term average drifts too far from the recent one, pull it along so we can recover from a permanent change
+				if (longRtt / shortRtt > 2) {
+					longRtt *= 0.95;
+				}
+			}
+			double gradient = dropped ? 0.5 : Math.max(0.5, Math.min(1, TOLERANCE * longRtt / shortRtt));
+			// allow for some queueing so the limit can grow
+			double target = limit * gradient + (saturated || dropped ? Math.sqrt(limit) : 0);
+			if (gradient < 1 || saturated) {
+				limit = limit * (1 - LIMIT_SMOOTHING) + target * LIMIT_SMOOTHING;
+			}
+		}
+		else {
+			if (dropped) {
+				limit = limit * BACKOFF;
+			}
+			// a full round trip completes about limit calls, so this adds one per round trip rather than one per call
+			else if (saturated) {
+				limit = limit + 1 / limit;
+			}
+			shortRtt = shortRtt == 0 ? rtt : shortRtt * (1 - SHORT_ALPHA) + rtt * SHORT_ALPHA;
+		}
+		limit = Math.max(settings.getMinimum(), Math.min(settings.getMaximum(), limit));
+	}
+
+	public Settings getSettings() {
+		return settings;
+	}
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+	// the recent round trip time in milliseconds
+	public synchronized double getRtt() {
+		return shortRtt / 1000000;
+	}
+	// the long term round trip time in milliseconds (gradient only)
+	public synchronized double getLongRtt() {
+		return longRtt / 1000000;
+	}
+	// the amount of calls that were refused because the limit was reached
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	public static class Settings {
+		private final Algorithm algorithm;
+		private final int initial, minimum, maximum;
+
+		public Settings(Algorithm algorithm, int initial, int minimum, int maximum) {
+			this.algorithm = algorithm == null ? Algorithm.AIMD : algorithm;
+			this.minimum = Math.max(1, minimum);
+			this.maximum = Math.max(this.minimum, maximum);
+			this.initial = initial;
+		}
+
+		public Algorithm getAlgorithm() {
+			return algorithm;
+		}
+		public int getInitial() {
+			return initial;
+		}
+		public int getMinimum() {
+			return minimum;
+		}
+		public int getMaximum() {
+			return maximum;
+		}
+	}
+}
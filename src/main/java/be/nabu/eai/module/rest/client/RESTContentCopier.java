@@ -0,0 +1,68 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import be.nabu.libs.types.TypeUtils;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.Element;
+
+/**
+ * Deep copies parsed content so a result that is shared (e.g. cached) can be handed to a caller that may modify it.
+ */
+public class RESTContentCopier {
+
+	public static ComplexContent copy(ComplexContent content) {
+		if (content == null) {
+			return null;
+		}
+		ComplexContent copy = content.getType().newInstance();
+		for (Element<?> child : TypeUtils.getAllChildren(content.getType())) {
+			Object value = content.get(child.getName());
+			if (value != null) {
+				copy.set(child.getName(), copyValue(value));
+			}
+		}
+		return copy;
+	}
+
+	private static Object copyValue(Object value) {
+		if (value instanceof ComplexContent) {
+			return copy((ComplexContent) value);
+		}
+		else if (value instanceof Collection) {
+			List<Object> list = new ArrayList<Object>(((Collection<?>) value).size());
+			for (Object single : (Collection<?>) value) {
+				list.add(single == null ? null : copyValue(single));
+			}
+			return list;
+		}
+		else if (value instanceof Date) {
+			return new Date(((Date) value).getTime());
+		}
+		else if (value instanceof byte[]) {
+			return ((byte[]) value).clone();
+		}
+		// other simple values are immutable
+		return value;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.PlainMimeContentPart;
+
+/**
+ * A content part that opens its source again every time it is read, this makes it reopenable (e.g. for reporting or resending) without buffering the content.
+ */
+public class RESTContentPart extends PlainMimeContentPart {
+
+	public interface Source {
+		public InputStream open() throws IOException;
+	}
+
+	private Source source;
+
+	public RESTContentPart(Source source, Header...headers) {
+		super(null, (ReadableContainer<ByteBuffer>) null, headers);
+		this.source = source;
+	}
+
+	@Override
+	public ReadableContainer<ByteBuffer> getReadable() {
+		try {
+			return IOUtils.wrap(source.open());
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import be.nabu.eai.module.rest.WebResponseType;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeUtils;
+
+/**
+ * A parsed content type header, the binding to use for it and the charset parameter (if any).
+ * Parsed content types are memoized, the amount of different content types an endpoint sends back is typically very small.
+ */
+public class RESTContentType {
+
+	private static final int MAX_CACHED = 256;
+	private static Map<String, RESTContentType> cache = new ConcurrentHashMap<String, RESTContentType>();
+
+	private final String mediaType;
+	private final Charset charset;
+	private final WebResponseType kind;
+
+	private RESTContentType(String mediaType, Charset charset, WebResponseType kind) {
+		this.mediaType = mediaType;
+		this.charset = charset;
+		this.kind = kind;
+	}
+
+	/**
+	 * Resolves the content type from the headers, returns null if there is no content type header
+	 */
+	public static RESTContentType resolve(Header...headers) {
+		Header header = MimeUtils.getHeader("Content-Type", headers);
+		if (header == null || header.getValue() == null) {
+			return null;
+		}
+		String value = header.getValue();
+		// depending on how the header was parsed, the parameters can be split off into comments
+		String [] comments = header.getComments();
+		if (comments != null && comments.length > 0) {
+			StringBuilder builder = new StringBuilder(value);
+			for (String comment : comments) {
+				builder.append(';').append(comment);
+			}
+			value = builder.toString();
+		}
+		return resolve(value);
+	}
+
+	public static RESTContentType resolve(String value) {
+		if (value == null) {
+			return null;
+		}
+		RESTContentType contentType = cache.get(value);
+		if (contentType == null) {
+			contentType = parse(value);
+			if (cache.size() >= MAX_CACHED) {
+				cache.clear();
+			}
+			cache.put(value, contentType);
+		}
+		return contentType;
+	}
+
+	private static RESTContentType parse(String value) {
+		String [] parts = value.split(";");
+		String mediaType = parts[0].trim().toLowerCase();
+		Charset charset = null;
+		for (int i = 1; i < parts.length; i++) {
+			int index = parts[i].indexOf('=');
+			if (index > 0 && parts[i].substring(0, index).trim().equalsIgnoreCase("charset")) {
+				String name = parts[i].substring(index + 1).trim();
+				if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+					name = name.substring(1, name.length() - 1);
+				}
+				try {
+					charset = Charset.forName(name);
+				}
+				catch (Exception e) {
+					// an unknown charset, we fall back to the configured one
+				}
+			}
+		}
+		WebResponseType kind;
+		if (mediaType.equals("application/x-www-form-urlencoded")) {
+			kind = WebResponseType.FORM_ENCODED;
+		}
+		// this includes application/problem+json
+		else if (mediaType.equals("application/json") || mediaType.equals("application/javascript") || mediaType.equals("application/x-javascript")
+				|| (mediaType.startsWith("application/") && mediaType.endsWith("+json"))) {
+			kind = WebResponseType.JSON;
+		}
+		else {
+			kind = WebResponseType.XML;
+		}
+		return new RESTContentType(mediaType, charset, kind);
+	}
+
+	public String getMediaType() {
+		return mediaType;
+	}
+	// the charset parameter of the content type, null if none (or an unsupported one) was given
+	public Charset getCharset() {
+		return charset;
+	}
+	public WebResponseType getKind() {
+		return kind;
+	}
+}
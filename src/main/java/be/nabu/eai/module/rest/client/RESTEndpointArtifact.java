@@ -17,14 +17,133 @@
 
 package be.nabu.eai.module.rest.client;
 
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
 import be.nabu.eai.repository.api.Repository;
 import be.nabu.eai.repository.artifacts.jaxb.JAXBArtifact;
 import be.nabu.libs.resources.api.ResourceContainer;
 
 public class RESTEndpointArtifact extends JAXBArtifact<RESTEndpointConfiguration> {
 
+	private static final int MAX_RATE_LIMITERS = 10000;
+	
+	// bumped on every save so the rest clients using this endpoint know to recompile their plan
+	private volatile long version;
+	
+	// the retry budget is shared by all the rest clients that use this endpoint
+	private RESTRetryBudget retryBudget = new RESTRetryBudget();
+	
+	private volatile RESTCircuitBreaker circuitBreaker;
+	
+	private RESTBulkhead bulkhead = new RESTBulkhead();
+	
+	// the metrics of all the rest clients that use this endpoint
+	private RESTMetrics metrics;
+	
+	private volatile RESTConcurrencyLimiter concurrencyLimiter;
+	
+	// the rate limiters per credential, the empty string is used if the limit is not per credential
+	private ConcurrentHashMap<String, RESTRateLimiter> rateLimiters = new ConcurrentHashMap<String, RESTRateLimiter>();
+	
+	// the quota reported by the server per credential
+	private ConcurrentHashMap<String, RESTQuotaTracker> quotas = new ConcurrentHashMap<String, RESTQuotaTracker>();
+	
 	public RESTEndpointArtifact(String id, ResourceContainer<?> directory, Repository repository) {
 		super(id, directory, repository, "rest-endpoint.xml", RESTEndpointConfiguration.class);
+		this.metrics = new RESTMetrics(repository, id);
+	}
+
+	@Override
+	public void save(ResourceContainer<?> directory) throws IOException {
+		super.save(directory);
+		version++;
+		// the limits may have changed
+		rateLimiters.clear();
+		quotas.clear();
+		concurrencyLimiter = null;
+	}
+	
+	public long getVersion() {
+		return version;
+	}
+	
+	public RESTRetryBudget getRetryBudget() {
+		return retryBudget;
+	}
+	
+	public RESTMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public RESTBulkhead getBulkhead() {
+		return bulkhead;
+	}
+	
+	/**
+	 * The adaptive concurrency limiter, it is recreated when the endpoint is saved as the settings may have changed
+	 */
+	public RESTConcurrencyLimiter getConcurrencyLimiter(RESTConcurrencyLimiter.Settings settings) {
+		RESTConcurrencyLimiter limiter = concurrencyLimiter;
+		if (limiter == null) {
+			synchronized(this) {
+				limiter = concurrencyLimiter;
+				if (limiter == null) {
+					limiter = new RESTConcurrencyLimiter(settings);
+					concurrencyLimiter = limiter;
+				}
+			}
+		}
+		return limiter;
+	}
+	
+	// the current adaptive concurrency limiter (if any) for monitoring purposes
+	public RESTConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+	
+	public RESTCircuitBreaker getCircuitBreaker() {
+		if (circuitBreaker == null) {
+			synchronized(this) {
+				if (circuitBreaker == null) {
+					circuitBreaker = new RESTCircuitBreaker(getId());
+				}
+			}
+		}
+		return circuitBreaker;
+	}
+	
+	public RESTRateLimiter getRateLimiter(String credential, RESTRateLimiter.Settings settings) {
+		String key = credential == null || !settings.isPerCredential() ? "" : credential;
+		RESTRateLimiter limiter = rateLimiters.get(key);
+		if (limiter == null) {
+			// we don't want an unbounded amount of credentials to build up
+			if (rateLimiters.size() >= MAX_RATE_LIMITERS) {
+				rateLimiters.clear();
+			}
+			limiter = new RESTRateLimiter(settings);
+			RESTRateLimiter existing = rateLimiters.putIfAbsent(key, limiter);
+			if (existing != null) {
+				limiter = existing;
+			}
+		}
+		return limiter;
+	}
+	
+	public RESTQuotaTracker getQuotaTracker(String credential) {
+		String key = credential == null ? "" : credential;
+		RESTQuotaTracker tracker = quotas.get(key);
+		if (tracker == null) {
+			if (quotas.size() >= MAX_RATE_LIMITERS) {
+				quotas.clear();
+			}
+			tracker = new RESTQuotaTracker();
+			RESTQuotaTracker existing = quotas.putIfAbsent(key, tracker);
+			if (existing != null) {
+				tracker = existing;
+			}
+		}
+		return tracker;
 	}
 
 }
@@ -51,6 +51,42 @@ public class RESTEndpointConfiguration {
 	// https://forum.figma.com/t/api-poor-response-bad-request/48474/5
 	private boolean omitContentLengthIfEmpty;
 	
+	// the maximum amount of bytes of an error response that is kept
+	private Integer errorBodyMaxSize;
+	
+	// whether responses can be cached according to their http caching headers
+	private Boolean cacheResponses;
+	private Integer cacheMaxEntries;
+	private Long cacheMaxSize;
+	
+	// the retry policy for failed calls
+	private Integer retryAttempts;
+	private String retryStatusCodes, retryExceptions;
+	private Boolean retryNonIdempotent;
+	private Long retryInitialDelay, retryMaxDelay;
+	private Double retryBudget;
+	
+	// the circuit breaker for all the rest clients of this endpoint
+	private Boolean circuitBreaker;
+	private Double circuitFailureRate, circuitSlowCallRate;
+	private Long circuitSlowCallDuration, circuitOpenDuration;
+	private Integer circuitMinimumCalls;
+	
+	// the client side rate limit
+	private Integer rateLimit, rateLimitBurst;
+	private Long rateLimitPeriod, rateLimitMaxWait;
+	private Boolean rateLimitPerCredential;
+	// pace the calls according to the quota reported by the server
+	private Boolean adaptiveRateLimit;
+	
+	// the bulkhead that limits the concurrent calls to this endpoint
+	private Integer maxInFlight, maxQueued;
+	private Long queueTimeout;
+	
+	// the algorithm to adapt the concurrency limit with, not limited if not set
+	private RESTConcurrencyLimiter.Algorithm adaptiveConcurrency;
+	private Integer adaptiveConcurrencyInitial, adaptiveConcurrencyMinimum, adaptiveConcurrencyMaximum;
+	
 	@XmlJavaTypeAdapter(value = ArtifactXMLAdapter.class)
 	public HTTPClientArtifact getHttpClient() {
 		return httpClient;
@@ -186,4 +222,214 @@ public class RESTEndpointConfiguration {
 	public void setOmitContentLengthIfEmpty(boolean omitContentLengthIfEmpty) {
 		this.omitContentLengthIfEmpty = omitContentLengthIfEmpty;
 	}
+	@Field(group = "advanced", comment = "The maximum amount of bytes of an error response that is added to the exception, the rest is discarded. Defaults to 16384")
+	public Integer getErrorBodyMaxSize() {
+		return errorBodyMaxSize;
+	}
+	public void setErrorBodyMaxSize(Integer errorBodyMaxSize) {
+		this.errorBodyMaxSize = errorBodyMaxSize;
+	}
+	@Field(group = "cache", comment = "Cache GET responses in memory according to their Cache-Control, ETag and Last-Modified headers")
+	public Boolean getCacheResponses() {
+		return cacheResponses;
+	}
+	public void setCacheResponses(Boolean cacheResponses) {
+		this.cacheResponses = cacheResponses;
+	}
+	@Field(show = "cacheResponses == true", group = "cache", comment = "The maximum amount of cached responses per rest client, defaults to 1000")
+	public Integer getCacheMaxEntries() {
+		return cacheMaxEntries;
+	}
+	public void setCacheMaxEntries(Integer cacheMaxEntries) {
+		this.cacheMaxEntries = cacheMaxEntries;
+	}
+	@Field(show = "cacheResponses == true", group = "cache", comment = "The maximum amount of bytes (as received) of cached responses per rest client, defaults to 10MB")
+	public Long getCacheMaxSize() {
+		return cacheMaxSize;
+	}
+	public void setCacheMaxSize(Long cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+	@Field(group = "retry", comment = "The maximum amount of retries for a call, calls are not retried if this is not set")
+	public Integer getRetryAttempts() {
+		return retryAttempts;
+	}
+	public void setRetryAttempts(Integer retryAttempts) {
+		this.retryAttempts = retryAttempts;
+	}
+	@Field(show = "retryAttempts != null", group = "retry", comment = "The comma separated response codes that can be retried, defaults to 408, 429, 502, 503 and 504")
+	public String getRetryStatusCodes() {
+		return retryStatusCodes;
+	}
+	public void setRetryStatusCodes(String retryStatusCodes) {
+		this.retryStatusCodes = retryStatusCodes;
+	}
+	@Field(show = "retryAttempts != null", group = "retry", comment = "The comma separated exception classes that can be retried, defaults to java.io.IOException")
+	public String getRetryExceptions() {
+		return retryExceptions;
+	}
+	public void setRetryExceptions(String retryExceptions) {
+		this.retryExceptions = retryExceptions;
+	}
+	@Field(show = "retryAttempts != null", group = "retry", comment = "By default only idempotent methods (GET, HEAD, PUT, DELETE, OPTIONS) are retried")
+	public Boolean getRetryNonIdempotent() {
+		return retryNonIdempotent;
+	}
+	public void setRetryNonIdempotent(Boolean retryNonIdempotent) {
+		this.retryNonIdempotent = retryNonIdempotent;
+	}
+	@Field(show = "retryAttempts != null", group = "retry", comment = "The delay in milliseconds before the first retry, it doubles for every subsequent retry (with jitter), defaults to 100")
+	public Long getRetryInitialDelay() {
+		return retryInitialDelay;
+	}
+	public void setRetryInitialDelay(Long retryInitialDelay) {
+		this.retryInitialDelay = retryInitialDelay;
+	}
+	@Field(show = "retryAttempts != null", group = "retry", comment = "The maximum delay in milliseconds before a retry, a Retry-After beyond this is not honoured, defaults to 10000")
+	public Long getRetryMaxDelay() {
+		return retryMaxDelay;
+	}
+	public void setRetryMaxDelay(Long retryMaxDelay) {
+		this.retryMaxDelay = retryMaxDelay;
+	}
+	@Field(show = "retryAttempts != null", group = "retry", comment = "The maximum amount of retries as a fraction of the calls, defaults to 0.2")
+	public Double getRetryBudget() {
+		return retryBudget;
+	}
+	public void setRetryBudget(Double retryBudget) {
+		this.retryBudget = retryBudget;
+	}
+	@Field(group = "circuitBreaker", comment = "Fail fast when the endpoint is failing or too slow")
+	public Boolean getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	public void setCircuitBreaker(Boolean circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+	@Field(show = "circuitBreaker == true", group = "circuitBreaker", comment = "The fraction of failed calls (exceptions and 5xx responses) that opens the circuit, defaults to 0.5")
+	public Double getCircuitFailureRate() {
+		return circuitFailureRate;
+	}
+	public void setCircuitFailureRate(Double circuitFailureRate) {
+		this.circuitFailureRate = circuitFailureRate;
+	}
+	@Field(show = "circuitBreaker == true", group = "circuitBreaker", comment = "The fraction of slow calls that opens the circuit, slow calls are ignored if not set")
+	public Double getCircuitSlowCallRate() {
+		return circuitSlowCallRate;
+	}
+	public void setCircuitSlowCallRate(Double circuitSlowCallRate) {
+		this.circuitSlowCallRate = circuitSlowCallRate;
+	}
+	@Field(show = "circuitBreaker == true", group = "circuitBreaker", comment = "The duration in milliseconds from which a call is considered slow, defaults to 5000")
+	public Long getCircuitSlowCallDuration() {
+		return circuitSlowCallDuration;
+	}
+	public void setCircuitSlowCallDuration(Long circuitSlowCallDuration) {
+		this.circuitSlowCallDuration = circuitSlowCallDuration;
+	}
+	@Field(show = "circuitBreaker == true", group = "circuitBreaker", comment = "The minimum amount of calls before the circuit can open, defaults to 20")
+	public Integer getCircuitMinimumCalls() {
+		return circuitMinimumCalls;
+	}
+	public void setCircuitMinimumCalls(Integer circuitMinimumCalls) {
+		this.circuitMinimumCalls = circuitMinimumCalls;
+	}
+	@Field(show = "circuitBreaker == true", group = "circuitBreaker", comment = "How long in milliseconds the circuit stays open before probing again, defaults to 30000")
+	public Long getCircuitOpenDuration() {
+		return circuitOpenDuration;
+	}
+	public void setCircuitOpenDuration(Long circuitOpenDuration) {
+		this.circuitOpenDuration = circuitOpenDuration;
+	}
+	@Field(group = "rateLimit", comment = "The maximum amount of calls per period, calls are not limited if not set")
+	public Integer getRateLimit() {
+		return rateLimit;
+	}
+	public void setRateLimit(Integer rateLimit) {
+		this.rateLimit = rateLimit;
+	}
+	@Field(show = "rateLimit != null", group = "rateLimit", comment = "The period for the rate limit in milliseconds, defaults to 1000")
+	public Long getRateLimitPeriod() {
+		return rateLimitPeriod;
+	}
+	public void setRateLimitPeriod(Long rateLimitPeriod) {
+		this.rateLimitPeriod = rateLimitPeriod;
+	}
+	@Field(show = "rateLimit != null", group = "rateLimit", comment = "The maximum amount of calls that can be done at once after a quiet period, defaults to the rate limit")
+	public Integer getRateLimitBurst() {
+		return rateLimitBurst;
+	}
+	public void setRateLimitBurst(Integer rateLimitBurst) {
+		this.rateLimitBurst = rateLimitBurst;
+	}
+	@Field(show = "rateLimit != null", group = "rateLimit", comment = "How long in milliseconds a call can wait to stay within the rate limit, by default calls fail fast")
+	public Long getRateLimitMaxWait() {
+		return rateLimitMaxWait;
+	}
+	public void setRateLimitMaxWait(Long rateLimitMaxWait) {
+		this.rateLimitMaxWait = rateLimitMaxWait;
+	}
+	@Field(show = "rateLimit != null", group = "rateLimit", comment = "Apply the rate limit per api key or user instead of for the endpoint as a whole")
+	public Boolean getRateLimitPerCredential() {
+		return rateLimitPerCredential;
+	}
+	public void setRateLimitPerCredential(Boolean rateLimitPerCredential) {
+		this.rateLimitPerCredential = rateLimitPerCredential;
+	}
+	@Field(group = "rateLimit", comment = "Pace the calls per api key or user according to the quota reported in the (X-)RateLimit response headers, calls wait at most the maximum wait (30s if not set)")
+	public Boolean getAdaptiveRateLimit() {
+		return adaptiveRateLimit;
+	}
+	public void setAdaptiveRateLimit(Boolean adaptiveRateLimit) {
+		this.adaptiveRateLimit = adaptiveRateLimit;
+	}
+	@Field(group = "bulkhead", comment = "The maximum amount of concurrent calls to this endpoint, unlimited if not set")
+	public Integer getMaxInFlight() {
+		return maxInFlight;
+	}
+	public void setMaxInFlight(Integer maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+	@Field(show = "maxInFlight != null", group = "bulkhead", comment = "The maximum amount of calls that can wait for a slot, defaults to 100")
+	public Integer getMaxQueued() {
+		return maxQueued;
+	}
+	public void setMaxQueued(Integer maxQueued) {
+		this.maxQueued = maxQueued;
+	}
+	@Field(show = "maxInFlight != null", group = "bulkhead", comment = "How long in milliseconds a call can wait for a slot, defaults to 30000")
+	public Long getQueueTimeout() {
+		return queueTimeout;
+	}
+	public void setQueueTimeout(Long queueTimeout) {
+		this.queueTimeout = queueTimeout;
+	}
+	@Field(group = "bulkhead", comment = "Adapt the amount of concurrent calls to this endpoint to the measured round trip times, calls beyond the limit fail fast")
+	public RESTConcurrencyLimiter.Algorithm getAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+	public void setAdaptiveConcurrency(RESTConcurrencyLimiter.Algorithm adaptiveConcurrency) {
+		this.adaptiveConcurrency = adaptiveConcurrency;
+	}
+	@Field(show = "adaptiveConcurrency != null", group = "bulkhead", comment = "The initial concurrency limit, defaults to 20")
+	public Integer getAdaptiveConcurrencyInitial() {
+		return adaptiveConcurrencyInitial;
+	}
+	public void setAdaptiveConcurrencyInitial(Integer adaptiveConcurrencyInitial) {
+		this.adaptiveConcurrencyInitial = adaptiveConcurrencyInitial;
+	}
+	@Field(show = "adaptiveConcurrency != null", group = "bulkhead", comment = "The minimum concurrency limit, defaults to 1")
+	public Integer getAdaptiveConcurrencyMinimum() {
+		return adaptiveConcurrencyMinimum;
+	}
+	public void setAdaptiveConcurrencyMinimum(Integer adaptiveConcurrencyMinimum) {
+		this.adaptiveConcurrencyMinimum = adaptiveConcurrencyMinimum;
+	}
+	@Field(show = "adaptiveConcurrency != null", group = "bulkhead", comment = "The maximum concurrency limit, defaults to 200")
+	public Integer getAdaptiveConcurrencyMaximum() {
+		return adaptiveConcurrencyMaximum;
+	}
+	public void setAdaptiveConcurrencyMaximum(Integer adaptiveConcurrencyMaximum) {
+		this.adaptiveConcurrencyMaximum = adaptiveConcurrencyMaximum;
+	}
 }
@@ -0,0 +1,201 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import be.nabu.eai.module.rest.WebResponseType;
+import be.nabu.libs.types.SimpleTypeWrapperFactory;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.ComplexType;
+import be.nabu.libs.types.base.SimpleElementImpl;
+import be.nabu.libs.types.base.ValueImpl;
+import be.nabu.libs.types.binding.api.UnmarshallableBinding;
+import be.nabu.libs.types.binding.api.Window;
+import be.nabu.libs.types.properties.MinOccursProperty;
+import be.nabu.libs.types.structure.Structure;
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+import be.nabu.utils.mime.api.ContentPart;
+import be.nabu.utils.mime.api.Part;
+import be.nabu.utils.mime.impl.MimeUtils;
+
+/**
+ * The content of an error response, only the first part of it is read so a large error page can not exhaust the memory.
+ * What remains is drained if it is small enough for the connection to be reused, otherwise it is discarded by closing the content.
+ * Problem details (RFC 7807) are parsed into a typed structure.
+ */
+public class RESTErrorBody {
+
+	// the amount of bytes we are willing to read (beyond what is captured) to keep the connection reusable
+	private static final long DRAIN_LIMIT = Long.parseLong(System.getProperty("be.nabu.eai.rest.client.error.drainLimit", "65536"));
+	
+	private static volatile ComplexType problemType;
+	
+	private final byte [] content;
+	private final String text;
+	private final boolean truncated;
+	private final ComplexContent problem;
+
+	private RESTErrorBody(byte [] content, String text, boolean truncated, ComplexContent problem) {
+		this.content = content;
+		this.text = text;
+		this.truncated = truncated;
+		this.problem = problem;
+	}
+
+	/**
+	 * Reads at most the given amount of bytes, returns null if there is no content
+	 */
+	public static RESTErrorBody read(Part part, int maxSize, Charset charset, RESTBindingCache bindings) throws IOException {
+		if (!(part instanceof ContentPart)) {
+			return null;
+		}
+		ReadableContainer<ByteBuffer> readable = ((ContentPart) part).getReadable();
+		if (readable == null) {
+			return null;
+		}
+		Long contentLength = MimeUtils.getContentLength(part.getHeaders());
+		byte [] bytes = new byte[contentLength != null && contentLength >= 0 && contentLength < maxSize ? contentLength.intValue() : Math.max(0, maxSize)];
+		int read = 0;
+		boolean truncated = false;
+		InputStream input = IOUtils.toInputStream(readable);
+		try {
+			int amount;
+			while (read < bytes.length && (amount = input.read(bytes, read, bytes.length - read)) >= 0) {
+				read += amount;
+			}
+			if (read == bytes.length && input.read() >= 0) {
+				truncated = true;
+				// no use reading a remainder we know is too big
+				if (contentLength == null || contentLength - read <= DRAIN_LIMIT) {
+					drain(input);
+				}
+			}
+		}
+		finally {
+			input.close();
+		}
+		if (read < bytes.length) {
+			byte [] shorter = new byte[read];
+			System.arraycopy(bytes, 0, shorter, 0, read);
+			bytes = shorter;
+		}
+		RESTContentType contentType = RESTContentType.resolve(part.getHeaders());
+		if (contentType != null && contentType.getCharset() != null) {
+			charset = contentType.getCharset();
+		}
+		if (charset == null) {
+			charset = Charset.forName("UTF-8");
+		}
+		ComplexContent problem = null;
+		if (!truncated && bytes.length > 0 && contentType != null && contentType.getMediaType().startsWith("application/problem+")) {
+			problem = parseProblem(bytes, contentType.getKind(), charset, bindings);
+		}
+		return new RESTErrorBody(bytes, new String(bytes, charset), truncated, problem);
+	}
+	
+	/**
+	 * Discards the content of a response we are not interested in, it is drained if it is small enough
+	 */
+	public static void discard(Part part) throws IOException {
+		if (part instanceof ContentPart) {
+			ReadableContainer<ByteBuffer> readable = ((ContentPart) part).getReadable();
+			if (readable != null) {
+				InputStream input = IOUtils.toInputStream(readable);
+				try {
+					Long contentLength = MimeUtils.getContentLength(part.getHeaders());
+					if (contentLength == null || contentLength <= DRAIN_LIMIT) {
+						drain(input);
+					}
+				}
+				finally {
+					input.close();
+				}
+			}
+		}
+	}
+	
+	private static void drain(InputStream input) throws IOException {
+		byte [] buffer = new byte[(int) Math.min(8192, Math.max(1, DRAIN_LIMIT))];
+		long drained = 0;
+		int amount;
+		while (drained < DRAIN_LIMIT && (amount = input.read(buffer, 0, (int) Math.min(buffer.length, DRAIN_LIMIT - drained))) >= 0) {
+			drained += amount;
+		}
+	}
+	
+	private static ComplexContent parseProblem(byte [] bytes, WebResponseType kind, Charset charset, RESTBindingCache bindings) {
+		try {
+			RESTBindingCache.Lease lease = bindings.borrowUnmarshaller(kind, getProblemType(), charset, RESTBindingCache.LENIENT);
+			try {
+				return lease.<UnmarshallableBinding>getBinding().unmarshal(new ByteArrayInputStream(bytes), new Window[0]);
+			}
+			finally {
+				lease.close();
+			}
+		}
+		catch (Exception e) {
+			// not a valid problem, the text is still available
+			return null;
+		}
+	}
+	
+	/**
+	 * The problem details type, any extension members are ignored
+	 */
+	public static ComplexType getProblemType() {
+		if (problemType == null) {
+			synchronized(RESTErrorBody.class) {
+				if (problemType == null) {
+					Structure structure = new Structure();
+					structure.setName("problem");
+					structure.add(new SimpleElementImpl<String>("type", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), structure, new ValueImpl<Integer>(MinOccursProperty.getInstance(), 0)));
+					structure.add(new SimpleElementImpl<String>("title", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), structure, new ValueImpl<Integer>(MinOccursProperty.getInstance(), 0)));
+					structure.add(new SimpleElementImpl<Integer>("status", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(Integer.class), structure, new ValueImpl<Integer>(MinOccursProperty.getInstance(), 0)));
+					structure.add(new SimpleElementImpl<String>("detail", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), structure, new ValueImpl<Integer>(MinOccursProperty.getInstance(), 0)));
+					structure.add(new SimpleElementImpl<String>("instance", SimpleTypeWrapperFactory.getInstance().getWrapper().wrap(String.class), structure, new ValueImpl<Integer>(MinOccursProperty.getInstance(), 0)));
+					problemType = structure;
+				}
+			}
+		}
+		return problemType;
+	}
+
+	// the captured bytes
+	public byte[] getContent() {
+		return content;
+	}
+	// the captured bytes decoded with the charset of the response
+	public String getText() {
+		return text;
+	}
+	// whether the response was larger than what was captured
+	public boolean isTruncated() {
+		return truncated;
+	}
+	// the parsed problem details, null if the response did not contain any
+	public ComplexContent getProblem() {
+		return problem;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import be.nabu.eai.module.rest.RESTUtils;
+import be.nabu.libs.converter.ConverterFactory;
+import be.nabu.libs.converter.api.Converter;
+import be.nabu.libs.property.ValueUtils;
+import be.nabu.libs.types.TypeUtils;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.ComplexType;
+import be.nabu.libs.types.api.Element;
+import be.nabu.libs.types.properties.AliasProperty;
+import be.nabu.utils.mime.api.ModifiablePart;
+import be.nabu.utils.mime.impl.MimeHeader;
+
+/**
+ * Writes the request headers of a rest client, the header name and the handling of each field are resolved once per type.
+ */
+public class RESTHeaderEncoder {
+
+	private final ComplexType type;
+	private final RequestHeader [] headers;
+	private final Converter converter;
+
+	public RESTHeaderEncoder(ComplexType type) {
+		this.type = type;
+		List<RequestHeader> headers = new ArrayList<RequestHeader>();
+		for (Element<?> element : TypeUtils.getAllChildren(type)) {
+			headers.add(new RequestHeader(element));
+		}
+		this.headers = headers.toArray(new RequestHeader[headers.size()]);
+		this.converter = ConverterFactory.getInstance().getConverter();
+	}
+
+	public ComplexType getType() {
+		return type;
+	}
+
+	/**
+	 * Sets the headers in the content on the part
+	 */
+	public void encode(ModifiablePart part, ComplexContent content) {
+		for (RequestHeader header : headers) {
+			Object values = content.get(header.field);
+			// nothing to do...
+			if (values == null) {
+				continue;
+			}
+			// remove previously set content type headers
+			if (header.replaces) {
+				part.removeHeader(header.name);
+			}
+			if (values instanceof Collection) {
+				for (Object value : (Collection<?>) values) {
+					if (value != null) {
+						part.setHeader(new MimeHeader(header.name, stringify(value)));
+					}
+				}
+			}
+			else {
+				part.setHeader(new MimeHeader(header.name, stringify(values)));
+			}
+			// if we pass in a content length at the application level, unset any transfer encoding
+			// note that it can get re-added if gzip is toggled
+			if (header.contentLength) {
+				part.removeHeader("Transfer-Encoding");
+			}
+		}
+	}
+
+	private String stringify(Object value) {
+		return value instanceof String ? (String) value : converter.convert(value, String.class);
+	}
+
+	private static class RequestHeader {
+		private final String field, name;
+		private final boolean replaces, contentLength;
+
+		public RequestHeader(Element<?> element) {
+			this.field = element.getName();
+			String alias = ValueUtils.getValue(AliasProperty.getInstance(), element.getProperties());
+			this.name = alias == null ? RESTUtils.fieldToHeader(field) : alias;
+			this.replaces = name.equalsIgnoreCase("Content-Type") || name.equalsIgnoreCase("Accept");
+			this.contentLength = name.equalsIgnoreCase("Content-Length");
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram with log-linear buckets: every power of two is split into a fixed amount of sub buckets.
+ * This gives a bounded relative error (about 6%) for any value while recording is a single atomic increment.
+ */
+public class RESTHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// values up to 2^48 can be recorded, anything above that ends up in the last bucket
+	private static final int MAX_BITS = 48;
+
+	private final AtomicLongArray buckets = new AtomicLongArray((MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+	private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+	public void record(long value) {
+		record(value, 1);
+	}
+	
+	private void record(long value, long amount) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.addAndGet(index(value), amount);
+		count.addAndGet(amount);
+		sum.addAndGet(value * amount);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value));
+	}
+	
+	/**
+	 * Corrects for coordinated omission: a value that took longer than the expected interval between two values has kept the values that should have been recorded in the meantime from being recorded.
+	 * Those missing values are added, each one interval shorter than the previous.
+	 */
+	public RESTHistogram corrected(long expectedInterval) {
+		RESTHistogram corrected = new RESTHistogram();
+		for (int i = 0; i < buckets.length(); i++) {
+			long amount = buckets.get(i);
+			if (amount > 0) {
+				long value = Math.min(upperBound(i), max.get());
+				corrected.record(value, amount);
+				if (expectedInterval > 0) {
+					for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+						corrected.record(missing, amount);
+					}
+				}
+			}
+		}
+		return corrected;
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		// the position of the highest bit determines the power of two, the next bits the sub bucket
+		int bits = 64 - Long.numberOfLeadingZeros(value);
+		if (bits > MAX_BITS) {
+			return (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS - 1;
+		}
+		int shift = bits - SUB_BUCKET_BITS - 1;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	// the highest value that ends up in the given bucket
+	private static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * The value below which the given fraction (e.g. 0.99) of the recorded values falls, this is an upper bound within the precision of the buckets
+	 */
+	public long getPercentile(double fraction) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(total * fraction));
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= target) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+	public long getSum() {
+		return sum.get();
+	}
+	public long getMax() {
+		return max.get();
+	}
+	public double getMean() {
+		long total = count.get();
+		return total == 0 ? 0 : (double) sum.get() / total;
+	}
+
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+}
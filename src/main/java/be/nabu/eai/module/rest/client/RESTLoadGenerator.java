@@ -0,0 +1,204 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import be.nabu.libs.services.api.ExecutionContext;
+import be.nabu.libs.services.api.ServiceException;
+import be.nabu.libs.types.api.ComplexContent;
+
+/**
+ * Executes a rest client with the same input at a given load and reports the throughput, errors and latency.
+ * In a closed model every worker starts the next call as soon as the previous one is done. In an open model the calls are started at a fixed rate, regardless of how long the previous ones took.
+ * The reported latency is corrected for coordinated omission: in an open model it is measured from the moment a call should have started, in a closed model the missing samples are added afterwards.
+ */
+public class RESTLoadGenerator {
+
+	// the maximum amount of workers (each a thread) a load test can use
+	public static final int MAX_CONCURRENCY = Integer.parseInt(System.getProperty("be.nabu.eai.rest.client.loadTest.maxConcurrency", "256"));
+	
+	private RESTClientArtifact artifact;
+
+	public RESTLoadGenerator(RESTClientArtifact artifact) {
+		this.artifact = artifact;
+	}
+
+	public RESTLoadReport run(final ExecutionContext executionContext, final ComplexContent input, final Settings settings) throws InterruptedException {
+		final RESTClientPlan plan = artifact.getPlan();
+		final RESTClientServiceInstance instance = new RESTClientServiceInstance(artifact);
+		// the execution context of the caller is bound to the calling thread, the other workers each get their own
+		final RESTChildRuntime runtime = new RESTChildRuntime(artifact, executionContext);
+		final ComplexContent childInput = RESTChildRuntime.withoutTransaction(input);
+		final Thread caller = Thread.currentThread();
+		final RESTHistogram serviceTime = new RESTHistogram(), latency = new RESTHistogram();
+		final AtomicLong next = new AtomicLong(), completed = new AtomicLong(), errors = new AtomicLong(), last = new AtomicLong();
+		final Map<String, AtomicLong> codes = new ConcurrentHashMap<String, AtomicLong>();
+		final boolean open = settings.getRate() > 0;
+		final long started = System.nanoTime();
+		final long deadline = settings.getDuration() > 0 ? started + TimeUnit.MILLISECONDS.toNanos(settings.getDuration()) : Long.MAX_VALUE;
+		final CountDownLatch latch = new CountDownLatch(settings.getConcurrency());
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					boolean child = Thread.currentThread() != caller;
+					ExecutionContext context = child ? runtime.newExecutionContext() : executionContext;
+					ComplexContent workerInput = child ? childInput : input;
+					while (!Thread.currentThread().isInterrupted()) {
+						long index = next.getAndIncrement();
+						if (settings.getRequests() > 0 && index >= settings.getRequests()) {
+							break;
+						}
+						long intended;
+						if (open) {
+							intended = started + (long) (index * 1000000000d / settings.getRate());
+							if (intended >= deadline) {
+								break;
+							}
+							long wait;
+							while ((wait = intended - System.nanoTime()) > 0) {
+								LockSupport.parkNanos(wait);
+								if (Thread.currentThread().isInterrupted()) {
+									return;
+								}
+							}
+						}
+						else {
+							intended = System.nanoTime();
+							if (intended >= deadline) {
+								break;
+							}
+						}
+						long actual = System.nanoTime();
+						try {
+							instance.execute(context, workerInput, plan);
+						}
+						catch (ServiceException e) {
+							error(e.getCode());
+						}
+						catch (Exception e) {
+							error(e.getClass().getName());
+						}
+						long stopped = System.nanoTime();
+						serviceTime.record((stopped - actual) / 1000);
+						if (open) {
+							latency.record((stopped - intended) / 1000);
+						}
+						completed.incrementAndGet();
+						long current;
+						while (stopped > (current = last.get()) && !last.compareAndSet(current, stopped));
+					}
+				}
+				finally {
+					latch.countDown();
+				}
+			}
+			private void error(String code) {
+				errors.incrementAndGet();
+				if (code == null) {
+					code = "unknown";
+				}
+				AtomicLong counter = codes.get(code);
+				if (counter == null) {
+					codes.putIfAbsent(code, new AtomicLong());
+					counter = codes.get(code);
+				}
+				counter.incrementAndGet();
+			}
+		};
+		// the threads are dedicated to this test so the load is not limited by (or limiting) the shared executors
+		ExecutorService executor = RESTClientExecutors.newExecutor(true, settings.getConcurrency());
+		try {
+			// the calling thread is one of the workers
+			for (int i = 1; i < settings.getConcurrency(); i++) {
+				try {
+					executor.execute(worker);
+				}
+				catch (RejectedExecutionException e) {
+					latch.countDown();
+				}
+			}
+			worker.run();
+			latch.await();
+		}
+		finally {
+			// make sure no new calls are started if we were interrupted
+			next.set(Long.MAX_VALUE / 2);
+			executor.shutdownNow();
+		}
+		
+		RESTLoadReport report = new RESTLoadReport();
+		report.setRestClientId(artifact.getId());
+		report.setOpenModel(open);
+		report.setConcurrency(settings.getConcurrency());
+		report.setTargetRate(open ? settings.getRate() : null);
+		report.setRequests(completed.get());
+		report.setErrors(errors.get());
+		report.setErrorRate(completed.get() == 0 ? 0 : (double) errors.get() / completed.get());
+		long duration = Math.max(0, last.get() - started);
+		report.setDuration(TimeUnit.NANOSECONDS.toMillis(duration));
+		report.setThroughput(duration == 0 ? 0 : completed.get() * 1000000000d / duration);
+		report.setServiceTime(RESTLoadReport.Latency.of(serviceTime));
+		// in a closed model we expect a worker to start a call every time a typical call is done
+		report.setLatency(RESTLoadReport.Latency.of(open ? latency : serviceTime.corrected(serviceTime.getPercentile(0.5))));
+		for (Map.Entry<String, AtomicLong> code : new TreeMap<String, AtomicLong>(codes).entrySet()) {
+			report.getErrorCodes().add(new RESTLoadReport.ErrorCode(code.getKey(), code.getValue().get()));
+		}
+		return report;
+	}
+	
+	public static class Settings {
+		private final int concurrency;
+		private final long duration, requests;
+		private final double rate;
+
+		public Settings(int concurrency, long duration, long requests, double rate) {
+			this.concurrency = Math.max(1, Math.min(MAX_CONCURRENCY, concurrency));
+			this.duration = duration;
+			this.requests = requests;
+			this.rate = rate;
+		}
+
+		// the amount of workers executing calls
+		public int getConcurrency() {
+			return concurrency;
+		}
+		// how long in milliseconds the test runs, 0 if it is only limited by the amount of requests
+		public long getDuration() {
+			return duration;
+		}
+		// the maximum amount of requests, 0 if it is only limited by the duration
+		public long getRequests() {
+			return requests;
+		}
+		// the requests per second to start in an open model, 0 for a closed model
+		public double getRate() {
+			return rate;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * The result of a load test, all latencies are in milliseconds.
+ */
+@XmlRootElement(name = "loadReport")
+@XmlType(propOrder = { "restClientId", "openModel", "concurrency", "targetRate", "requests", "errors", "errorRate", "duration", "throughput", "latency", "serviceTime", "errorCodes" })
+public class RESTLoadReport {
+
+	private String restClientId;
+	private boolean openModel;
+	private int concurrency;
+	private Double targetRate;
+	private long requests, errors, duration;
+	private double errorRate, throughput;
+	private Latency latency, serviceTime;
+	private List<ErrorCode> errorCodes;
+	
+	public String getRestClientId() {
+		return restClientId;
+	}
+	public void setRestClientId(String restClientId) {
+		this.restClientId = restClientId;
+	}
+	
+	// whether the requests were started at a fixed rate (open) or as soon as the previous one finished (closed)
+	public boolean isOpenModel() {
+		return openModel;
+	}
+	public void setOpenModel(boolean openModel) {
+		this.openModel = openModel;
+	}
+	
+	public int getConcurrency() {
+		return concurrency;
+	}
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+	
+	// the requests per second that were intended in an open model
+	public Double getTargetRate() {
+		return targetRate;
+	}
+	public void setTargetRate(Double targetRate) {
+		this.targetRate = targetRate;
+	}
+	
+	public long getRequests() {
+		return requests;
+	}
+	public void setRequests(long requests) {
+		this.requests = requests;
+	}
+	
+	public long getErrors() {
+		return errors;
+	}
+	public void setErrors(long errors) {
+		this.errors = errors;
+	}
+	
+	public double getErrorRate() {
+		return errorRate;
+	}
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+	
+	// how long the test ran in milliseconds
+	public long getDuration() {
+		return duration;
+	}
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+	
+	// the completed requests per second
+	public double getThroughput() {
+		return throughput;
+	}
+	public void setThroughput(double throughput) {
+		this.throughput = throughput;
+	}
+	
+	// the latency corrected for coordinated omission, this is what a caller arriving at the intended rate would experience
+	public Latency getLatency() {
+		return latency;
+	}
+	public void setLatency(Latency latency) {
+		this.latency = latency;
+	}
+	
+	// the time the calls actually took, from the moment they were started
+	public Latency getServiceTime() {
+		return serviceTime;
+	}
+	public void setServiceTime(Latency serviceTime) {
+		this.serviceTime = serviceTime;
+	}
+	
+	public List<ErrorCode> getErrorCodes() {
+		if (errorCodes == null) {
+			errorCodes = new ArrayList<ErrorCode>();
+		}
+		return errorCodes;
+	}
+	public void setErrorCodes(List<ErrorCode> errorCodes) {
+		this.errorCodes = errorCodes;
+	}
+
+	@XmlType(propOrder = { "mean", "p50", "p90", "p99", "p999", "max" })
+	public static class Latency {
+		private double mean, p50, p90, p99, p999, max;
+		
+		// from a histogram in microseconds
+		public static Latency of(RESTHistogram histogram) {
+			Latency latency = new Latency();
+			latency.setMean(histogram.getMean() / 1000);
+			latency.setP50(histogram.getPercentile(0.5) / 1000d);
+			latency.setP90(histogram.getPercentile(0.9) / 1000d);
+			latency.setP99(histogram.getPercentile(0.99) / 1000d);
+			latency.setP999(histogram.getPercentile(0.999) / 1000d);
+			latency.setMax(histogram.getMax() / 1000d);
+			return latency;
+		}
+		
+		public double getMean() {
+			return mean;
+		}
+		public void setMean(double mean) {
+			this.mean = mean;
+		}
+		public double getP50() {
+			return p50;
+		}
+		public void setP50(double p50) {
+			this.p50 = p50;
+		}
+		public double getP90() {
+			return p90;
+		}
+		public void setP90(double p90) {
+			this.p90 = p90;
+		}
+		public double getP99() {
+			return p99;
+		}
+		public void setP99(double p99) {
+			this.p99 = p99;
+		}
+		public double getP999() {
+			return p999;
+		}
+		public void setP999(double p999) {
+			this.p999 = p999;
+		}
+		public double getMax() {
+			return max;
+		}
+		public void setMax(double max) {
+			this.max = max;
+		}
+	}
+	
+	@XmlType(propOrder = { "code", "amount" })
+	public static class ErrorCode {
+		private String code;
+		private long amount;
+		
+		public ErrorCode() {
+			// jaxb
+		}
+		public ErrorCode(String code, long amount) {
+			this.code = code;
+			this.amount = amount;
+		}
+		
+		public String getCode() {
+			return code;
+		}
+		public void setCode(String code) {
+			this.code = code;
+		}
+		public long getAmount() {
+			return amount;
+		}
+		public void setAmount(long amount) {
+			this.amount = amount;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.binding.api.MarshallableBinding;
+
+/**
+ * Marshals content in the background while it is being read, only a bounded amount of marshalled chunks is kept in memory at any time.
+ * The marshalling only starts when the stream is first read and is aborted when the stream is closed or no longer read.
+ */
+public class RESTMarshallingInputStream extends InputStream {
+
+	private static final int CHUNK_SIZE = 8192;
+	private static final int MAX_CHUNKS = 8;
+	private static final byte [] END = new byte[0];
+	// how long in milliseconds the marshaller waits for the reader (and vice versa) before giving up
+	private static final long TIMEOUT = Long.parseLong(System.getProperty("be.nabu.eai.rest.client.marshal.timeout", "60000"));
+
+	private static ThreadPoolExecutor executor = newExecutor(Integer.parseInt(System.getProperty("be.nabu.eai.rest.client.marshal.threads", "64")));
+
+	private BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(MAX_CHUNKS);
+	private volatile Throwable failure;
+	private volatile boolean closed;
+	private byte [] current;
+	private int position;
+	private RESTBindingCache.Lease lease;
+	private ComplexContent content;
+	private Future<?> producer;
+
+	public RESTMarshallingInputStream(RESTBindingCache.Lease lease, ComplexContent content) {
+		this.lease = lease;
+		this.content = content;
+	}
+
+	private static ThreadPoolExecutor newExecutor(int threads) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "rest-client-marshaller-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private synchronized void start() {
+		if (producer != null || closed) {
+			return;
+		}
+		final RESTBindingCache.Lease lease = this.lease;
+		final ComplexContent content = this.content;
+		// the producer holds on to these for as long as it runs, the stream should not
+		this.lease = null;
+		this.content = null;
+		producer = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (!closed) {
+						ChunkOutputStream output = new ChunkOutputStream();
+						lease.<MarshallableBinding>getBinding().marshal(output, content);
+						output.close();
+					}
+				}
+				catch (Throwable e) {
+					failure = e;
+				}
+				finally {
+					lease.close();
+					push(END);
+				}
+			}
+		});
+	}
+
+	private boolean push(byte [] chunk) {
+		long waited = 0;
+		try {
+			// if the reader is closed or stopped reading, no one will empty the queue anymore
+			while (!closed && waited < TIMEOUT) {
+				if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+				waited += 100;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	private boolean next() throws IOException {
+		if (current == END) {
+			return false;
+		}
+		if (current == null || position >= current.length) {
+			start();
+			try {
+				current = chunks.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+				position = 0;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for marshalled content", e);
+			}
+			if (current == null) {
+				close();
+				throw new IOException("Timed out while waiting for marshalled content");
+			}
+			if (current == END) {
+				if (failure != null) {
+					throw new IOException("Could not marshal the content", failure);
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!next()) {
+			return -1;
+		}
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (!next()) {
+			return -1;
+		}
+		int amount = Math.min(length, current.length - position);
+		System.arraycopy(current, position, bytes, offset, amount);
+		position += amount;
+		return amount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		chunks.clear();
+		synchronized(this) {
+			// never started, the lease can be returned immediately
+			if (producer == null && lease != null) {
+				lease.close();
+				lease = null;
+				content = null;
+			}
+			// a producer that is still queued is removed, a running one stops at the next chunk
+			else if (producer != null) {
+				producer.cancel(false);
+				executor.remove((Runnable) producer);
+			}
+		}
+	}
+
+	private class ChunkOutputStream extends OutputStream {
+
+		private byte [] buffer = new byte[CHUNK_SIZE];
+		private int size;
+
+		@Override
+		public void write(int value) throws IOException {
+			if (size == buffer.length) {
+				emit();
+			}
+			buffer[size++] = (byte) value;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			while (length > 0) {
+				if (size == buffer.length) {
+					emit();
+				}
+				int amount = Math.min(length, buffer.length - size);
+				System.arraycopy(bytes, offset, buffer, size, amount);
+				size += amount;
+				offset += amount;
+				length -= amount;
+			}
+		}
+
+		// bindings can flush often, we only hand over full chunks to prevent a lot of tiny ones
+		private void emit() throws IOException {
+			if (size > 0) {
+				byte [] chunk = new byte[size];
+				System.arraycopy(buffer, 0, chunk, 0, size);
+				size = 0;
+				if (!push(chunk)) {
+					throw new IOException("The marshalled content is no longer being read");
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			emit();
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import be.nabu.eai.repository.api.Repository;
+import be.nabu.libs.metrics.api.MetricInstance;
+
+/**
+ * The runtime statistics of a rest client or endpoint: latency histograms (in microseconds) per phase of a call, the response codes and the size of the requests and responses.
+ * If the metrics belong to an artifact, everything is also published to the metric instance of that artifact in the repository so it shows up in the platform monitoring.
+ */
+public class RESTMetrics {
+
+	public enum Phase {
+		// building the request (path, query, headers...) excluding the marshalling and authentication
+		BUILD,
+		// marshalling the content into a buffer, streamed content is marshalled during the network phase
+		MARSHAL,
+		// the security provider and preemptive authorization
+		AUTH,
+		// sending the request and receiving the response headers, for every attempt
+		NETWORK,
+		// reading and parsing the response
+		UNMARSHAL,
+		VALIDATE,
+		SANITIZE,
+		// the call as a whole
+		TOTAL
+	}
+
+	// the categories in the platform metrics
+	public static final String METRIC_REQUEST_SIZE = "requestSize", METRIC_RESPONSE_SIZE = "responseSize", METRIC_CODE = "code.";
+	private static final String [] METRIC_PHASES = new String[Phase.values().length];
+	
+	static {
+		for (Phase phase : Phase.values()) {
+			METRIC_PHASES[phase.ordinal()] = phase.name().toLowerCase() + "Time";
+		}
+	}
+	
+	private final RESTHistogram [] phases = new RESTHistogram[Phase.values().length];
+	private final RESTHistogram requestSizes = new RESTHistogram(), responseSizes = new RESTHistogram();
+	private final AtomicLongArray codes = new AtomicLongArray(600);
+	private final Repository repository;
+	private final String id;
+
+	public RESTMetrics() {
+		this(null, null);
+	}
+	
+	public RESTMetrics(Repository repository, String id) {
+		this.repository = repository;
+		this.id = id;
+		for (int i = 0; i < phases.length; i++) {
+			phases[i] = new RESTHistogram();
+		}
+	}
+
+	public void record(Phase phase, long nanos) {
+		phases[phase.ordinal()].record(nanos / 1000);
+		MetricInstance metrics = getMetricInstance();
+		if (metrics != null) {
+			metrics.duration(METRIC_PHASES[phase.ordinal()], nanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	public void recordCode(int code) {
+		if (code >= 0 && code < codes.length()) {
+			codes.incrementAndGet(code);
+		}
+		MetricInstance metrics = getMetricInstance();
+		if (metrics != null) {
+			metrics.increment(METRIC_CODE + code, 1);
+		}
+	}
+
+	public void recordRequestSize(long bytes) {
+		requestSizes.record(bytes);
+		MetricInstance metrics = getMetricInstance();
+		if (metrics != null) {
+			metrics.log(METRIC_REQUEST_SIZE, bytes);
+		}
+	}
+
+	public void recordResponseSize(long bytes) {
+		responseSizes.record(bytes);
+		MetricInstance metrics = getMetricInstance();
+		if (metrics != null) {
+			metrics.log(METRIC_RESPONSE_SIZE, bytes);
+		}
+	}
+	
+	// the repository decides whether metrics are enabled, so we don't hold on to the instance
+	private MetricInstance getMetricInstance() {
+		return repository == null || id == null ? null : repository.getMetricInstance(id);
+	}
+
+	public RESTHistogram getHistogram(Phase phase) {
+		return phases[phase.ordinal()];
+	}
+	public RESTHistogram getRequestSizes() {
+		return requestSizes;
+	}
+	public RESTHistogram getResponseSizes() {
+		return responseSizes;
+	}
+
+	// the amount of responses per response code
+	public Map<Integer, Long> getCodes() {
+		Map<Integer, Long> result = new LinkedHashMap<Integer, Long>();
+		for (int i = 0; i < codes.length(); i++) {
+			long amount = codes.get(i);
+			if (amount > 0) {
+				result.put(i, amount);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A flat view of the statistics, e.g. "NETWORK.p99" for the 99th percentile of the network phase in microseconds
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+		for (Phase phase : Phase.values()) {
+			add(statistics, phase.name(), phases[phase.ordinal()]);
+		}
+		add(statistics, "requestSize", requestSizes);
+		add(statistics, "responseSize", responseSizes);
+		for (Map.Entry<Integer, Long> code : getCodes().entrySet()) {
+			statistics.put("code." + code.getKey(), code.getValue());
+		}
+		return statistics;
+	}
+
+	private static void add(Map<String, Long> statistics, String name, RESTHistogram histogram) {
+		if (histogram.getCount() > 0) {
+			statistics.put(name + ".count", histogram.getCount());
+			statistics.put(name + ".p50", histogram.getPercentile(0.5));
+			statistics.put(name + ".p99", histogram.getPercentile(0.99));
+			statistics.put(name + ".p999", histogram.getPercentile(0.999));
+			statistics.put(name + ".max", histogram.getMax());
+		}
+	}
+
+	public void reset() {
+		for (RESTHistogram histogram : phases) {
+			histogram.reset();
+		}
+		requestSizes.reset();
+		responseSizes.reset();
+		for (int i = 0; i < codes.length(); i++) {
+			codes.set(i, 0);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import be.nabu.libs.converter.ConverterFactory;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.Element;
+import be.nabu.libs.types.api.Marshallable;
+
+/**
+ * A path split once into literal segments and parameters, it supports the same "{name}" and "{name:regex}" syntax as GlueListener.analyzePath
+ */
+public class RESTPathTemplate {
+
+	// the literal at index i precedes the parameter at index i, there is always one more literal than there are parameters
+	private final String [] literals;
+	private final String [] parameters;
+	// the original placeholder, it is retained if no value is available
+	private final String [] placeholders;
+	private final int staticLength;
+
+	private RESTPathTemplate(String [] literals, String [] parameters, String [] placeholders) {
+		this.literals = literals;
+		this.parameters = parameters;
+		this.placeholders = placeholders;
+		int staticLength = 0;
+		for (String literal : literals) {
+			staticLength += literal.length();
+		}
+		this.staticLength = staticLength;
+	}
+
+	public static RESTPathTemplate parse(String path) {
+		List<String> literals = new ArrayList<String>();
+		List<String> parameters = new ArrayList<String>();
+		List<String> placeholders = new ArrayList<String>();
+		int literalStart = 0;
+		int index = path.indexOf('{');
+		while (index >= 0) {
+			int nameStart = index + 1;
+			while (nameStart < path.length() && Character.isWhitespace(path.charAt(nameStart))) {
+				nameStart++;
+			}
+			int nameEnd = nameStart;
+			while (nameEnd < path.length() && isWordCharacter(path.charAt(nameEnd))) {
+				nameEnd++;
+			}
+			int end = nameEnd > nameStart ? path.indexOf('}', nameEnd) : -1;
+			// not a valid placeholder, it remains part of the literal
+			if (end < 0) {
+				index = path.indexOf('{', index + 1);
+				continue;
+			}
+			literals.add(path.substring(literalStart, index));
+			parameters.add(path.substring(nameStart, nameEnd));
+			placeholders.add(path.substring(index, end + 1));
+			literalStart = end + 1;
+			index = path.indexOf('{', literalStart);
+		}
+		literals.add(path.substring(literalStart));
+		return new RESTPathTemplate(literals.toArray(new String[literals.size()]), parameters.toArray(new String[parameters.size()]), placeholders.toArray(new String[placeholders.size()]));
+	}
+
+	private static boolean isWordCharacter(char character) {
+		return (character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z') || (character >= '0' && character <= '9') || character == '_';
+	}
+
+	public List<String> getParameters() {
+		return Collections.unmodifiableList(Arrays.asList(parameters));
+	}
+
+	// a reasonable initial size for a buffer that will hold the rendered path
+	public int getEstimatedLength() {
+		return staticLength + (parameters.length * 16);
+	}
+
+	public void render(StringBuilder builder, ComplexContent values) {
+		builder.append(literals[0]);
+		for (int i = 0; i < parameters.length; i++) {
+			Element<?> element = values == null ? null : values.getType().get(parameters[i]);
+			if (element == null) {
+				builder.append(placeholders[i]);
+			}
+			else {
+				Object value = values.get(parameters[i]);
+				if (value != null) {
+					builder.append(stringify(element, value));
+				}
+			}
+			builder.append(literals[i + 1]);
+		}
+	}
+
+	public String render(ComplexContent values) {
+		StringBuilder builder = new StringBuilder(getEstimatedLength());
+		render(builder, values);
+		return builder.toString();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static String stringify(Element<?> element, Object value) {
+		if (value instanceof String) {
+			return (String) value;
+		}
+		else if (element.getType() instanceof Marshallable) {
+			return ((Marshallable) element.getType()).marshal(value, element.getProperties());
+		}
+		else {
+			return ConverterFactory.getInstance().getConverter().convert(value, String.class);
+		}
+	}
+
+	// appends the path while collapsing any consecutive slashes
+	static void appendCollapsed(StringBuilder builder, String path) {
+		for (int i = 0; i < path.length(); i++) {
+			char character = path.charAt(i);
+			if (character != '/' || builder.length() == 0 || builder.charAt(builder.length() - 1) != '/') {
+				builder.append(character);
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.NotSupportedException;
+
+import be.nabu.libs.converter.ConverterFactory;
+import be.nabu.libs.property.ValueUtils;
+import be.nabu.libs.resources.URIUtils;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.ComplexType;
+import be.nabu.libs.types.api.Element;
+import be.nabu.libs.types.base.CollectionFormat;
+import be.nabu.libs.types.properties.AliasProperty;
+import be.nabu.libs.types.properties.CollectionFormatProperty;
+
+/**
+ * Writes the query parameters of a rest client, the alias, collection format and encoded name of each parameter are resolved once per type.
+ */
+public class RESTQueryEncoder {
+
+	private final ComplexType type;
+	private final QueryParameter [] parameters;
+
+	public RESTQueryEncoder(ComplexType type) {
+		this.type = type;
+		List<QueryParameter> parameters = new ArrayList<QueryParameter>();
+		for (Element<?> element : type) {
+			parameters.add(new QueryParameter(element));
+		}
+		this.parameters = parameters.toArray(new QueryParameter[parameters.size()]);
+	}
+
+	public ComplexType getType() {
+		return type;
+	}
+
+	/**
+	 * Appends the parameters in the content to the builder, it returns whether the next parameter is still the first in the query string
+	 */
+	public boolean encode(StringBuilder builder, ComplexContent content, boolean firstQuery) {
+		for (QueryParameter parameter : parameters) {
+			Object value = content.get(parameter.name);
+			if (value == null) {
+				continue;
+			}
+			if (value instanceof Iterable) {
+				boolean firstValue = true;
+				for (Object single : (Iterable<?>) value) {
+					if (single == null) {
+						continue;
+					}
+					else if (single instanceof ComplexContent) {
+						// TODO: in openapi 3 there are rules for serializing complex content
+						throw new NotSupportedException("Complex content is not yet supported in the query parameter");
+					}
+					if (firstValue) {
+						builder.append(firstQuery ? '?' : '&');
+						firstQuery = false;
+						builder.append(parameter.prefix);
+						// if it is multi, we want to keep appending the values as key=value
+						firstValue = parameter.multi;
+					}
+					else {
+						builder.append(parameter.separator);
+					}
+					builder.append(URIUtils.encodeURL(RESTPathTemplate.stringify(parameter.element, single)));
+				}
+			}
+			else if (value instanceof ComplexContent) {
+				// TODO: in openapi 3 there are rules for serializing complex content
+				throw new NotSupportedException("Complex content is not yet supported in the query parameter");
+			}
+			else {
+				builder.append(firstQuery ? '?' : '&');
+				firstQuery = false;
+				builder.append(parameter.encodedName).append('=');
+				builder.append(URIUtils.encodeURL(value instanceof String ? (String) value : ConverterFactory.getInstance().getConverter().convert(value, String.class)));
+			}
+		}
+		return firstQuery;
+	}
+
+	private static class QueryParameter {
+		private final Element<?> element;
+		private final String name, encodedName;
+		// the prefix for a list of values (or for each value if multi) and the separator between consecutive values
+		private final String prefix, separator;
+		private final boolean multi;
+
+		public QueryParameter(Element<?> element) {
+			this.element = element;
+			this.name = element.getName();
+			String alias = ValueUtils.getValue(AliasProperty.getInstance(), element.getProperties());
+			this.encodedName = URIUtils.encodeURL(alias == null ? name : alias);
+			CollectionFormat collectionFormat = ValueUtils.getValue(CollectionFormatProperty.getInstance(), element.getProperties());
+			String prefix = "";
+			// need to start with ";"
+			if (CollectionFormat.MATRIX_IMPLODE.equals(collectionFormat)) {
+				prefix = ";";
+				// the rest is CSV compatible for arrays
+				collectionFormat = CollectionFormat.CSV;
+			}
+			else if (CollectionFormat.MATRIX_EXPLODE.equals(collectionFormat)) {
+				prefix = ";";
+				collectionFormat = CollectionFormat.MULTI;
+			}
+			// for label formatting, we don't need the actual key
+			if (CollectionFormat.LABEL.equals(collectionFormat)) {
+				prefix += ".";
+			}
+			else {
+				prefix += encodedName + "=";
+			}
+			this.prefix = prefix;
+			this.multi = CollectionFormat.MULTI.equals(collectionFormat);
+			this.separator = (collectionFormat == null ? CollectionFormat.CSV : collectionFormat).getCharacter();
+		}
+	}
+}
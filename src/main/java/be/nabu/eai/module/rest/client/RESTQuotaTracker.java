@@ -0,0 +1,146 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeUtils;
+
+/**
+ * Learns the remaining quota from the rate limit headers sent back by the server and spreads the remaining calls evenly until the quota resets.
+ * Both the X-RateLimit-* headers and the IETF RateLimit headers (separate fields or the structured RateLimit field) are supported.
+ */
+public class RESTQuotaTracker {
+
+	// reset values beyond this are epoch seconds rather than a delay in seconds
+	private static final long EPOCH_THRESHOLD = 1000000000l;
+	// the spacing (in milliseconds) of calls that wait for a reset when we have never paced
+	private static final long DEFAULT_INTERVAL = 100;
+
+	// the quota as we know it, -1 if unknown
+	private long remaining = -1;
+	private long resetAt;
+	// the earliest time the next call can be sent
+	private long next;
+	// the spacing between the last paced calls, calls that wait for a reset are spread with it
+	private long interval = DEFAULT_INTERVAL;
+	private long paced;
+
+	/**
+	 * Reserves a call and returns how long (in milliseconds) to wait before sending it
+	 * Calls that have to wait for the reset are not all released at the reset, they are spread after it until fresh headers tell us the new quota.
+	 */
+	public synchronized long reserve(long now) {
+		long wait;
+		if (remaining < 0 || now >= resetAt) {
+			remaining = -1;
+			// calls are still queued after the reset, line up behind them
+			if (next <= now) {
+				return 0;
+			}
+			wait = next - now;
+			next += interval;
+		}
+		else if (remaining == 0) {
+			long start = Math.max(resetAt, next);
+			next = start + interval;
+			wait = start - now;
+		}
+		else {
+			long start = Math.max(now, next);
+			// spread what is left over the time that is left
+			interval = Math.max(1, (resetAt - start) / remaining);
+			next = start + interval;
+			remaining--;
+			wait = start - now;
+		}
+		if (wait > 0) {
+			paced++;
+		}
+		return wait;
+	}
+
+	/**
+	 * Updates the quota with the headers of a response
+	 */
+	public synchronized void update(Header[] headers, int code, long now) {
+		Long remaining = getLong(headers, "X-RateLimit-Remaining", "RateLimit-Remaining");
+		Long reset = getLong(headers, "X-RateLimit-Reset", "RateLimit-Reset");
+		Header structured = MimeUtils.getHeader("RateLimit", headers);
+		if (structured != null) {
+			for (String part : RESTResponseCache.getFullValue(structured).split("[,;]")) {
+				int index = part.indexOf('=');
+				if (index > 0) {
+					String name = part.substring(0, index).trim().toLowerCase();
+					Long value = parse(part.substring(index + 1));
+					if (name.equals("remaining") || name.equals("r")) {
+						remaining = value;
+					}
+					else if (name.equals("reset") || name.equals("t")) {
+						reset = value;
+					}
+				}
+			}
+		}
+		if (code == 429) {
+			Long retryAfter = RESTRetryPolicy.getRetryAfter(headers, now);
+			if (retryAfter != null) {
+				remaining = 0l;
+				reset = null;
+				this.resetAt = now + retryAfter;
+			}
+		}
+		if (reset != null) {
+			this.resetAt = reset > EPOCH_THRESHOLD ? reset * 1000 : now + reset * 1000;
+		}
+		if (remaining != null && resetAt > now) {
+			this.remaining = Math.max(0, remaining);
+		}
+	}
+
+	private static Long getLong(Header[] headers, String...names) {
+		for (String name : names) {
+			Header header = MimeUtils.getHeader(name, headers);
+			if (header != null) {
+				return parse(RESTResponseCache.getFullValue(header));
+			}
+		}
+		return null;
+	}
+
+	private static Long parse(String value) {
+		try {
+			// some servers send fractions of seconds
+			return (long) Math.ceil(Double.parseDouble(value.trim()));
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	// the remaining quota as far as we know, -1 if unknown
+	public synchronized long getRemaining() {
+		return remaining;
+	}
+	public synchronized long getResetAt() {
+		return resetAt;
+	}
+	// the amount of calls that were delayed to stay within the quota
+	public synchronized long getPaced() {
+		return paced;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+/**
+ * A token bucket that allows a number of permits per period with a maximum burst.
+ * Callers that are willing to wait reserve a future permit, so waiting callers are served in order and the rate is never exceeded.
+ */
+public class RESTRateLimiter {
+
+	private final double nanosPerPermit, burst;
+	private double permits;
+	private long refilled;
+	private long waited, rejected;
+
+	public RESTRateLimiter(Settings settings) {
+		this.nanosPerPermit = (double) settings.getPeriod() * 1000000 / settings.getPermits();
+		this.burst = settings.getBurst();
+		this.permits = burst;
+		this.refilled = System.nanoTime();
+	}
+
+	/**
+	 * Reserves a permit and returns how long (in nanoseconds) the caller has to wait before using it, or -1 if it would have to wait longer than the maximum
+	 */
+	public synchronized long reserve(long maxWait) {
+		long now = System.nanoTime();
+		permits = Math.min(burst, permits + (now - refilled) / nanosPerPermit);
+		refilled = now;
+		if (permits >= 1) {
+			permits--;
+			return 0;
+		}
+		long wait = (long) Math.ceil((1 - permits) * nanosPerPermit);
+		if (wait > maxWait) {
+			rejected++;
+			return -1;
+		}
+		// the permits can go negative, the next caller will have to wait for this one as well
+		permits--;
+		waited++;
+		return wait;
+	}
+
+	public synchronized double getAvailable() {
+		return permits;
+	}
+	// the amount of calls that had to wait for a permit
+	public synchronized long getWaited() {
+		return waited;
+	}
+	// the amount of calls that were refused a permit
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	public static class Settings {
+		private final int permits, burst;
+		private final long period, maxWait;
+		private final boolean perCredential;
+
+		public Settings(int permits, long period, int burst, long maxWait, boolean perCredential) {
+			this.permits = permits;
+			this.period = period;
+			this.burst = Math.max(1, burst);
+			this.maxWait = maxWait;
+			this.perCredential = perCredential;
+		}
+
+		public int getPermits() {
+			return permits;
+		}
+		// the period in milliseconds
+		public long getPeriod() {
+			return period;
+		}
+		public int getBurst() {
+			return burst;
+		}
+		// how long in milliseconds a call can wait for a permit, 0 to fail fast
+		public long getMaxWait() {
+			return maxWait;
+		}
+		// whether each credential (api key or user) has its own limit
+		public boolean isPerCredential() {
+			return perCredential;
+		}
+	}
+}
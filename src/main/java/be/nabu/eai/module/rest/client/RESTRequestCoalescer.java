@@ -0,0 +1,128 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import be.nabu.libs.services.api.ServiceException;
+import be.nabu.libs.types.api.ComplexContent;
+
+/**
+ * Lets concurrent identical requests share a single call: the first caller for a key performs it, callers that arrive while it is in flight wait for its result.
+ * Every caller that shares a result gets its own copy so none of them can see the modifications of another.
+ * A caller waits at most the given timeout (in milliseconds) for a call that is in flight, the call itself is bounded by the timeouts of the client.
+ */
+public class RESTRequestCoalescer {
+
+	private Map<String, Flight> inFlight = new ConcurrentHashMap<String, Flight>();
+	private AtomicLong calls = new AtomicLong(), coalesced = new AtomicLong();
+
+	public ComplexContent execute(String key, long timeout, Callable<ComplexContent> call) throws Exception {
+		Flight flight = new Flight();
+		while (true) {
+			Flight existing = inFlight.putIfAbsent(key, flight);
+			if (existing == null) {
+				break;
+			}
+			else if (existing.join()) {
+				coalesced.incrementAndGet();
+				try {
+					return RESTContentCopier.copy(existing.future.get(timeout, TimeUnit.MILLISECONDS));
+				}
+				// the key contains credentials, it can not be part of the message
+				catch (TimeoutException e) {
+					throw new ServiceException("REST-CLIENT-18", "Timed out after " + timeout + "ms waiting for an identical request that is in flight", e);
+				}
+				catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+			// the flight has just landed, make sure it is gone and try again
+			inFlight.remove(key, existing);
+		}
+		calls.incrementAndGet();
+		ComplexContent result;
+		try {
+			result = call.call();
+		}
+		catch (Exception e) {
+			land(key, flight);
+			flight.future.completeExceptionally(e);
+			throw e;
+		}
+		catch (Error e) {
+			land(key, flight);
+			flight.future.completeExceptionally(e);
+			throw e;
+		}
+		int followers = land(key, flight);
+		flight.future.complete(result);
+		// if nobody else received this result, we don't need to copy it
+		return followers > 0 ? RESTContentCopier.copy(result) : result;
+	}
+
+	private int land(String key, Flight flight) {
+		inFlight.remove(key, flight);
+		return flight.close();
+	}
+
+	// the amount of calls that were actually performed
+	public long getCalls() {
+		return calls.get();
+	}
+	// the amount of calls that reused the result of another call
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+	public int getInFlight() {
+		return inFlight.size();
+	}
+
+	private static class Flight {
+		private final CompletableFuture<ComplexContent> future = new CompletableFuture<ComplexContent>();
+		// the amount of callers waiting for this flight, -1 once no one can join anymore
+		private final AtomicInteger followers = new AtomicInteger();
+
+		private boolean join() {
+			while (true) {
+				int current = followers.get();
+				if (current < 0) {
+					return false;
+				}
+				else if (followers.compareAndSet(current, current + 1)) {
+					return true;
+				}
+			}
+		}
+
+		private int close() {
+			return followers.getAndSet(-1);
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeUtils;
+
+/**
+ * An in-memory LRU cache of parsed responses that follows the HTTP caching semantics (Cache-Control, Expires, ETag and Last-Modified).
+ * Stale entries that have validators are revalidated with a conditional request.
+ */
+public class RESTResponseCache {
+
+	// every request header can influence the response (e.g. a tenant or a cookie) except for these, the host is already in the key
+	private static final Set<String> IGNORED_HEADERS = new HashSet<String>(Arrays.asList("host", "content-length", "connection", "keep-alive", "proxy-connection", "te", "trailer", "transfer-encoding", "upgrade"));
+	
+	private static final Comparator<Header> BY_NAME = new Comparator<Header>() {
+		@Override
+		public int compare(Header first, Header second) {
+			return String.CASE_INSENSITIVE_ORDER.compare(first.getName(), second.getName());
+		}
+	};
+
+	private int maxEntries;
+	private long maxSize, size;
+
+	private Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	public RESTResponseCache(int maxEntries, long maxSize) {
+		this.maxEntries = maxEntries;
+		this.maxSize = maxSize;
+	}
+
+	public synchronized void setLimits(int maxEntries, long maxSize) {
+		this.maxEntries = maxEntries;
+		this.maxSize = maxSize;
+		evict();
+	}
+
+	public synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(String key, Entry entry) {
+		Entry previous = entries.put(key, entry);
+		if (previous != null) {
+			size -= previous.size;
+		}
+		size += entry.size;
+		evict();
+	}
+
+	public synchronized void remove(String key) {
+		Entry previous = entries.remove(key);
+		if (previous != null) {
+			size -= previous.size;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	public synchronized int getEntries() {
+		return entries.size();
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	private void evict() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext() && (entries.size() > maxEntries || size > maxSize)) {
+			size -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * The key for a request, any response to a request with the same key can be reused
+	 * The credential digest identifies the password of the principal, with challenge based authentication there is no authorization header to tell callers apart.
+	 */
+	public static String key(HTTPRequest request, Principal principal, String credentialDigest, boolean secure) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(request.getMethod()).append(secure ? " https://" : " http://");
+		Header host = MimeUtils.getHeader("Host", request.getContent().getHeaders());
+		if (host != null) {
+			builder.append(host.getValue());
+		}
+		builder.append(request.getTarget());
+		if (principal != null) {
+			builder.append('\n').append(principal.getName());
+			if (credentialDigest != null) {
+				builder.append('\n').append(credentialDigest);
+			}
+		}
+		Header [] headers = request.getContent().getHeaders();
+		if (headers != null && headers.length > 0) {
+			headers = headers.clone();
+			// the order in which headers are set should not matter, the order of the values of one header does (the sort is stable)
+			Arrays.sort(headers, BY_NAME);
+			for (Header header : headers) {
+				if (!IGNORED_HEADERS.contains(header.getName().toLowerCase())) {
+					builder.append('\n').append(header.getName().toLowerCase()).append(':').append(getFullValue(header));
+				}
+			}
+		}
+		return builder.toString();
+	}
+
+	// we don't want the password in plain text in the key
+	static String digest(String value) {
+		if (value == null) {
+			return "";
+		}
+		try {
+			byte [] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+			StringBuilder builder = new StringBuilder(digest.length * 2);
+			for (byte single : digest) {
+				builder.append(Character.forDigit((single >> 4) & 0xf, 16)).append(Character.forDigit(single & 0xf, 16));
+			}
+			return builder.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Calculates until when a response can be used without revalidation, returns -1 if the response may not be stored at all
+	 */
+	public static long getExpires(Header[] headers, long now) {
+		Header [] cacheControls = MimeUtils.getHeaders("Cache-Control", headers);
+		Long maxAge = null;
+		if (cacheControls != null) {
+			for (Header cacheControl : cacheControls) {
+				for (String directive : getFullValue(cacheControl).split("[,;]")) {
+					directive = directive.trim().toLowerCase();
+					if (directive.equals("no-store")) {
+						return -1;
+					}
+					// we may store it but it must be revalidated every time
+					else if (directive.equals("no-cache")) {
+						maxAge = 0l;
+					}
+					else if (directive.startsWith("max-age=") && maxAge == null) {
+						try {
+							maxAge = Long.parseLong(directive.substring("max-age=".length()).trim());
+						}
+						catch (NumberFormatException e) {
+							maxAge = 0l;
+						}
+					}
+				}
+			}
+		}
+		Header vary = MimeUtils.getHeader("Vary", headers);
+		if (vary != null && vary.getValue() != null && vary.getValue().trim().equals("*")) {
+			return -1;
+		}
+		if (maxAge != null) {
+			Header age = MimeUtils.getHeader("Age", headers);
+			long alreadyAged = 0;
+			if (age != null && age.getValue() != null) {
+				try {
+					alreadyAged = Long.parseLong(age.getValue().trim());
+				}
+				catch (NumberFormatException e) {
+					// ignore
+				}
+			}
+			return now + Math.max(0, maxAge - alreadyAged) * 1000;
+		}
+		Header expires = MimeUtils.getHeader("Expires", headers);
+		if (expires != null) {
+			Long date = parseDate(getFullValue(expires));
+			// an invalid expires (e.g. "0") means already expired
+			return date == null ? now : date;
+		}
+		// no explicit freshness, the response can only be reused after revalidation
+		return now;
+	}
+
+	static Long parseDate(String value) {
+		try {
+			return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	// the header parser can split parameters off into comments, we want the full value as it was sent
+	static String getFullValue(Header header) {
+		String value = header.getValue() == null ? "" : header.getValue();
+		String [] comments = header.getComments();
+		if (comments != null && comments.length > 0) {
+			StringBuilder builder = new StringBuilder(value);
+			for (String comment : comments) {
+				builder.append(';').append(comment);
+			}
+			value = builder.toString();
+		}
+		return value;
+	}
+
+	public static class Entry {
+		private final ComplexContent output;
+		private final String etag, lastModified;
+		private final long size;
+		private volatile long expires;
+
+		public Entry(ComplexContent output, Header[] headers, long expires, long size) {
+			this.output = output;
+			Header etag = MimeUtils.getHeader("ETag", headers);
+			this.etag = etag == null ? null : getFullValue(etag);
+			Header lastModified = MimeUtils.getHeader("Last-Modified", headers);
+			this.lastModified = lastModified == null ? null : getFullValue(lastModified);
+			this.expires = expires;
+			this.size = size;
+		}
+
+		public boolean isFresh(long now) {
+			return now < expires;
+		}
+
+		// whether we can send a conditional request for this entry
+		public boolean isRevalidatable() {
+			return etag != null || lastModified != null;
+		}
+
+		// a not modified response can update the freshness of the entry
+		public void revalidated(long expires) {
+			this.expires = expires;
+		}
+
+		public ComplexContent getOutput() {
+			return output;
+		}
+		public String getEtag() {
+			return etag;
+		}
+		public String getLastModified() {
+			return lastModified;
+		}
+		public long getSize() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import be.nabu.eai.module.rest.RESTUtils;
+import be.nabu.libs.property.api.Value;
+import be.nabu.libs.types.api.ComplexContent;
+import be.nabu.libs.types.api.ComplexType;
+import be.nabu.libs.types.api.Element;
+import be.nabu.libs.types.properties.AliasProperty;
+import be.nabu.libs.types.properties.MaxOccursProperty;
+import be.nabu.utils.mime.api.Header;
+
+/**
+ * Maps the response headers to the fields of the header output, the mapping is calculated once when the interface is built.
+ */
+public class RESTResponseHeaderPlan {
+
+	private final ComplexType type;
+	// both the header name as configured and its lowercase variant are mapped so most lookups don't need to lowercase
+	private final Map<String, Field> fields = new HashMap<String, Field>();
+	private final List<Field> ordered = new ArrayList<Field>();
+
+	public RESTResponseHeaderPlan(ComplexType type) {
+		this.type = type;
+		for (Element<?> child : type) {
+			Value<String> alias = child.getProperty(AliasProperty.getInstance());
+			String name = alias == null || alias.getValue() == null ? RESTUtils.fieldToHeader(child.getName()) : alias.getValue();
+			Value<Integer> maxOccurs = child.getProperty(MaxOccursProperty.getInstance());
+			Field field = new Field(ordered.size(), child.getName(), maxOccurs != null && maxOccurs.getValue() != null && maxOccurs.getValue() != 1);
+			fields.put(name, field);
+			fields.put(name.toLowerCase(), field);
+			ordered.add(field);
+		}
+	}
+
+	/**
+	 * Extracts the mapped headers in a single pass, returns null if none of them are present
+	 */
+	public ComplexContent extract(Header...headers) {
+		if (headers == null || ordered.isEmpty()) {
+			return null;
+		}
+		Object [] values = null;
+		for (Header header : headers) {
+			if (header == null || header.getName() == null || header.getValue() == null) {
+				continue;
+			}
+			Field field = fields.get(header.getName());
+			if (field == null) {
+				field = fields.get(header.getName().toLowerCase());
+				if (field == null) {
+					continue;
+				}
+			}
+			if (values == null) {
+				values = new Object[ordered.size()];
+			}
+			if (field.list) {
+				@SuppressWarnings("unchecked")
+				List<String> list = (List<String>) values[field.index];
+				if (list == null) {
+					list = new ArrayList<String>(2);
+					values[field.index] = list;
+				}
+				list.add(header.getValue());
+			}
+			// a single valued field gets the first occurrence
+			else if (values[field.index] == null) {
+				values[field.index] = header.getValue();
+			}
+		}
+		if (values == null) {
+			return null;
+		}
+		ComplexContent content = type.newInstance();
+		for (Field field : ordered) {
+			if (values[field.index] != null) {
+				content.set(field.name, values[field.index]);
+			}
+		}
+		return content;
+	}
+
+	private static class Field {
+		private final int index;
+		private final String name;
+		private final boolean list;
+
+		private Field(int index, String name, boolean list) {
+			this.index = index;
+			this.name = name;
+			this.list = list;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the amount of retries as a fraction of the calls: every call deposits the fraction, every retry withdraws one.
+ * This prevents retries from multiplying the load on a server that is already failing, there is a small reserve so calls can be retried when traffic is low.
+ */
+public class RESTRetryBudget {
+
+	// balances are kept in thousandths of a retry
+	private static final long SCALE = 1000;
+
+	private final long maximum;
+	private final AtomicLong balance;
+	private final AtomicLong retries = new AtomicLong(), exhausted = new AtomicLong();
+
+	public RESTRetryBudget() {
+		this(10, 100);
+	}
+
+	public RESTRetryBudget(int reserve, int maximum) {
+		this.maximum = Math.max(reserve, maximum) * SCALE;
+		this.balance = new AtomicLong(reserve * SCALE);
+	}
+
+	public void deposit(double ratio) {
+		long amount = (long) (ratio * SCALE);
+		while (amount > 0) {
+			long current = balance.get();
+			long updated = Math.min(maximum, current + amount);
+			if (updated == current || balance.compareAndSet(current, updated)) {
+				break;
+			}
+		}
+	}
+
+	public boolean withdraw() {
+		while (true) {
+			long current = balance.get();
+			if (current < SCALE) {
+				exhausted.incrementAndGet();
+				return false;
+			}
+			else if (balance.compareAndSet(current, current - SCALE)) {
+				retries.incrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	// the amount of retries that are currently allowed
+	public double getAvailable() {
+		return (double) balance.get() / SCALE;
+	}
+	public long getRetries() {
+		return retries.get();
+	}
+	// the amount of retries that were refused because the budget was exhausted
+	public long getExhausted() {
+		return exhausted.get();
+	}
+}
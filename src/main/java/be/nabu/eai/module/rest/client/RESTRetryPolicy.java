@@ -0,0 +1,150 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package be.nabu.eai.module.rest.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.MimeUtils;
+
+/**
+ * Decides whether a failed call can be retried and how long to wait before doing so.
+ * The delay grows exponentially with full jitter so clients that failed at the same time do not retry at the same time.
+ */
+public class RESTRetryPolicy {
+
+	private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList("GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE"));
+
+	private final int attempts;
+	private final boolean [] statusCodes = new boolean[600];
+	private final List<Class<?>> exceptions = new ArrayList<Class<?>>();
+	private final boolean nonIdempotent;
+	private final long initialDelay, maxDelay;
+	private final double budget;
+
+	public RESTRetryPolicy(int attempts, String statusCodes, String exceptions, boolean nonIdempotent, long initialDelay, long maxDelay, double budget) {
+		this.attempts = attempts;
+		this.nonIdempotent = nonIdempotent;
+		this.initialDelay = Math.max(0, initialDelay);
+		this.maxDelay = Math.max(this.initialDelay, maxDelay);
+		this.budget = budget;
+		for (String code : (statusCodes == null ? "408, 429, 502, 503, 504" : statusCodes).split("[\\s,]+")) {
+			if (!code.isEmpty()) {
+				int parsed;
+				try {
+					parsed = Integer.parseInt(code);
+				}
+				catch (NumberFormatException e) {
+					parsed = -1;
+				}
+				if (parsed < 0 || parsed >= this.statusCodes.length) {
+					throw new IllegalArgumentException("Invalid status code '" + code + "' in property 'retryStatusCodes'");
+				}
+				this.statusCodes[parsed] = true;
+			}
+		}
+		for (String exception : (exceptions == null ? "java.io.IOException" : exceptions).split("[\\s,]+")) {
+			if (!exception.isEmpty()) {
+				this.exceptions.add(load(exception));
+			}
+		}
+	}
+
+	private static Class<?> load(String name) {
+		try {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			return Class.forName(name, false, loader == null ? RESTRetryPolicy.class.getClassLoader() : loader);
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Unknown retry exception: " + name, e);
+		}
+	}
+
+	public boolean isRetryable(String method) {
+		return nonIdempotent || IDEMPOTENT_METHODS.contains(method.toUpperCase());
+	}
+
+	public boolean isRetryable(int code) {
+		return code >= 0 && code < statusCodes.length && statusCodes[code];
+	}
+
+	// exceptions are often wrapped by the http client, so we check the causes as well
+	public boolean isRetryable(Throwable throwable) {
+		while (throwable != null) {
+			for (Class<?> exception : exceptions) {
+				if (exception.isInstance(throwable)) {
+					return true;
+				}
+			}
+			throwable = throwable.getCause() == throwable ? null : throwable.getCause();
+		}
+		return false;
+	}
+
+	/**
+	 * The delay before the given retry (starting at 1), the server can ask for a minimum delay using Retry-After
+	 */
+	public long getDelay(int retry, Long retryAfter) {
+		if (retryAfter != null) {
+			// a bit of jitter on top of what the server asked, otherwise all clients come back at the same moment
+			return retryAfter + (initialDelay <= 0 ? 0 : ThreadLocalRandom.current().nextLong(initialDelay + 1));
+		}
+		long ceiling = initialDelay << Math.min(retry - 1, 30);
+		if (ceiling < 0 || ceiling > maxDelay) {
+			ceiling = maxDelay;
+		}
+		return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/**
+	 * Parses the Retry-After header which can either be an amount of seconds or a http date, returns the delay in milliseconds or null if there is no (valid) header
+	 */
+	public static Long getRetryAfter(Header[] headers, long now) {
+		Header header = MimeUtils.getHeader("Retry-After", headers);
+		if (header == null) {
+			return null;
+		}
+		String value = RESTResponseCache.getFullValue(header).trim();
+		try {
+			return Math.max(0, Long.parseLong(value) * 1000);
+		}
+		catch (NumberFormatException e) {
+			Long date = RESTResponseCache.parseDate(value);
+			return date == null ? null : Math.max(0, date - now);
+		}
+	}
+
+	// the maximum amount of retries
+	public int getAttempts() {
+		return attempts;
+	}
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+	public double getBudget() {
+		return budget;
+	}
+}
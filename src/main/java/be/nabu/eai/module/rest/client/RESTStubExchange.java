@@ -0,0 +1,256 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * A recorded request/response pair, it is stored as xml in the folder of the rest client.
+ * Only the response is stored completely, the request is identified by its method, target and a hash of its content.
+ */
+@XmlRootElement(name = "exchange")
+@XmlType(propOrder = { "method", "target", "contentHash", "code", "message", "duration", "headers", "content" })
+public class RESTStubExchange {
+
+	public static final String PREFIX = "recording-";
+	
+	// the value that replaces secrets in the recorded target
+	public static final String REDACTED = "redacted";
+	
+	// headers that hold credentials or session state are never recorded
+	// the content is recorded as it was decoded by the client, so the content encoding no longer applies
+	private static final Set<String> UNRECORDED_HEADERS = new HashSet<String>(Arrays.asList("authorization", "proxy-authorization", "cookie", "set-cookie", "set-cookie2", "content-encoding"));
+	
+	private static JAXBContext context;
+	
+	private String method, target, contentHash, message;
+	private int code;
+	// how long in milliseconds it took the server to respond when it was recorded
+	private long duration;
+	private List<RecordedHeader> headers;
+	private byte [] content;
+
+	/**
+	 * The name of the file an exchange is stored in, an exchange for the same request replaces the previous one
+	 */
+	public static String getFileName(String method, String target, String contentHash) {
+		return PREFIX + method.toLowerCase() + "-" + hash((method + " " + target + " " + contentHash).getBytes(Charset.forName("UTF-8"))).substring(0, 16) + ".xml";
+	}
+	
+	/**
+	 * Replaces the value of the given query parameters in the target, the recording should not contain secrets like api keys
+	 */
+	public static String redact(String target, String...parameters) {
+		int index = target == null ? -1 : target.indexOf('?');
+		if (index < 0 || parameters == null) {
+			return target;
+		}
+		StringBuilder builder = new StringBuilder(target.length()).append(target, 0, index + 1);
+		boolean first = true;
+		for (String parameter : target.substring(index + 1).split("&")) {
+			if (!first) {
+				builder.append('&');
+			}
+			first = false;
+			int equals = parameter.indexOf('=');
+			String name = equals < 0 ? parameter : parameter.substring(0, equals);
+			boolean redact = false;
+			for (String secret : parameters) {
+				if (secret != null && (secret.equals(name) || secret.equals(decode(name)))) {
+					redact = true;
+					break;
+				}
+			}
+			builder.append(redact ? name + "=" + REDACTED : parameter);
+		}
+		return builder.toString();
+	}
+	
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		}
+		catch (Exception e) {
+			return value;
+		}
+	}
+	
+	/**
+	 * Whether a response header can be recorded, the given headers are considered secret as well
+	 */
+	public static boolean isRecordable(String name, String...secrets) {
+		if (name == null || UNRECORDED_HEADERS.contains(name.toLowerCase())) {
+			return false;
+		}
+		if (secrets != null) {
+			for (String secret : secrets) {
+				if (name.equalsIgnoreCase(secret)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	public static String hash(byte [] bytes) {
+		try {
+			byte [] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+			StringBuilder builder = new StringBuilder(digest.length * 2);
+			for (byte single : digest) {
+				builder.append(Character.forDigit((single >> 4) & 0xf, 16)).append(Character.forDigit(single & 0xf, 16));
+			}
+			return builder.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static JAXBContext getContext() throws JAXBException {
+		if (context == null) {
+			context = JAXBContext.newInstance(RESTStubExchange.class);
+		}
+		return context;
+	}
+	
+	public static RESTStubExchange unmarshal(InputStream input) throws IOException {
+		try {
+			return (RESTStubExchange) getContext().createUnmarshaller().unmarshal(input);
+		}
+		catch (JAXBException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	public void marshal(OutputStream output) throws IOException {
+		try {
+			Marshaller marshaller = getContext().createMarshaller();
+			marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+			marshaller.marshal(this, output);
+		}
+		catch (JAXBException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	public String getMethod() {
+		return method;
+	}
+	public void setMethod(String method) {
+		this.method = method;
+	}
+	
+	// the path and query of the request
+	public String getTarget() {
+		return target;
+	}
+	public void setTarget(String target) {
+		this.target = target;
+	}
+	
+	// the hash of the request content (if any), requests with content that can not be read again are recorded without a hash
+	public String getContentHash() {
+		return contentHash;
+	}
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+	
+	public int getCode() {
+		return code;
+	}
+	public void setCode(int code) {
+		this.code = code;
+	}
+	
+	public String getMessage() {
+		return message;
+	}
+	public void setMessage(String message) {
+		this.message = message;
+	}
+	
+	public long getDuration() {
+		return duration;
+	}
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+	
+	@XmlElement(name = "header")
+	public List<RecordedHeader> getHeaders() {
+		if (headers == null) {
+			headers = new ArrayList<RecordedHeader>();
+		}
+		return headers;
+	}
+	public void setHeaders(List<RecordedHeader> headers) {
+		this.headers = headers;
+	}
+	
+	public byte[] getContent() {
+		return content;
+	}
+	public void setContent(byte[] content) {
+		this.content = content;
+	}
+
+	public static class RecordedHeader {
+		private String name, value;
+		
+		public RecordedHeader() {
+			// jaxb
+		}
+		public RecordedHeader(String name, String value) {
+			this.name = name;
+			this.value = value;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public String getValue() {
+			return value;
+		}
+		public void setValue(String value) {
+			this.value = value;
+		}
+	}
+}
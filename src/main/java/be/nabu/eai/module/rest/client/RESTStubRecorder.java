@@ -0,0 +1,149 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Principal;
+import java.text.ParseException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.api.HTTPResponse;
+import be.nabu.libs.http.api.client.HTTPClient;
+import be.nabu.libs.http.core.DefaultHTTPResponse;
+import be.nabu.libs.resources.ResourceUtils;
+import be.nabu.libs.resources.api.Resource;
+import be.nabu.libs.resources.api.ResourceContainer;
+import be.nabu.libs.resources.api.WritableResource;
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.io.api.ByteBuffer;
+import be.nabu.utils.io.api.ReadableContainer;
+import be.nabu.utils.io.api.WritableContainer;
+import be.nabu.utils.mime.api.ContentPart;
+import be.nabu.utils.mime.api.Header;
+import be.nabu.utils.mime.impl.PlainMimeContentPart;
+
+/**
+ * Sends the requests with the actual client and stores every response in the folder of the rest client so it can be replayed by the {@link RESTStubServer}.
+ * The response content is read entirely to record it, the caller gets a copy.
+ */
+public class RESTStubRecorder implements HTTPClient {
+
+	private static Logger logger = LoggerFactory.getLogger(RESTStubRecorder.class);
+	
+	private HTTPClient client;
+	private ResourceContainer<?> directory;
+	private RESTStubServer.Settings settings;
+
+	public RESTStubRecorder(HTTPClient client, ResourceContainer<?> directory, RESTStubServer.Settings settings) {
+		this.client = client;
+		this.directory = directory;
+		this.settings = settings;
+	}
+
+	@Override
+	public HTTPResponse execute(HTTPRequest request, Principal principal, boolean secure, boolean followRedirects) throws IOException, ParseException {
+		String contentHash = getContentHash(request);
+		long started = System.currentTimeMillis();
+		HTTPResponse response = RESTStubServer.execute(client, request, principal, secure, followRedirects);
+		long duration = System.currentTimeMillis() - started;
+		
+		RESTStubExchange exchange = new RESTStubExchange();
+		exchange.setMethod(request.getMethod().toUpperCase());
+		exchange.setTarget(RESTStubExchange.redact(request.getTarget(), settings.getSecretParameter()));
+		exchange.setContentHash(contentHash);
+		exchange.setCode(response.getCode());
+		exchange.setMessage(response.getMessage());
+		exchange.setDuration(duration);
+		Header [] headers = response.getContent() == null ? new Header[0] : response.getContent().getHeaders();
+		for (Header header : headers) {
+			if (!RESTStubExchange.isRecordable(header.getName(), settings.getSecretHeader())) {
+				continue;
+			}
+			exchange.getHeaders().add(new RESTStubExchange.RecordedHeader(header.getName(), RESTResponseCache.getFullValue(header)));
+		}
+		if (response.getContent() instanceof ContentPart) {
+			ReadableContainer<ByteBuffer> readable = ((ContentPart) response.getContent()).getReadable();
+			if (readable != null) {
+				try {
+					exchange.setContent(IOUtils.toBytes(readable));
+				}
+				finally {
+					readable.close();
+				}
+				response = new DefaultHTTPResponse(response.getCode(), response.getMessage(), new PlainMimeContentPart(null, IOUtils.wrap(exchange.getContent(), true), headers));
+			}
+		}
+		// a failed recording should not fail the call
+		try {
+			store(exchange);
+		}
+		catch (Exception e) {
+			logger.warn("Could not record the response for: " + exchange.getMethod() + " " + exchange.getTarget(), e);
+		}
+		return response;
+	}
+	
+	// only content that can be read again is hashed, content that is streamed from the input would be consumed
+	private static String getContentHash(HTTPRequest request) throws IOException {
+		if (!(request.getContent() instanceof RESTContentPart)) {
+			return null;
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		InputStream input = IOUtils.toInputStream(((RESTContentPart) request.getContent()).getReadable());
+		try {
+			byte [] bytes = new byte[8192];
+			int read;
+			while ((read = input.read(bytes)) >= 0) {
+				output.write(bytes, 0, read);
+			}
+		}
+		finally {
+			input.close();
+		}
+		return output.size() == 0 ? null : RESTStubExchange.hash(output.toByteArray());
+	}
+	
+	private void store(RESTStubExchange exchange) throws IOException {
+		String name = RESTStubExchange.getFileName(exchange.getMethod(), exchange.getTarget(), exchange.getContentHash());
+		synchronized(directory) {
+			Resource resource = ResourceUtils.touch(directory, name);
+			WritableContainer<ByteBuffer> writable = ((WritableResource) resource).getWritable();
+			OutputStream output = IOUtils.toOutputStream(writable);
+			try {
+				exchange.marshal(output);
+			}
+			finally {
+				output.close();
+			}
+		}
+	}
+	
+	public void close() throws IOException {
+		if (client instanceof Closeable) {
+			((Closeable) client).close();
+		}
+	}
+}
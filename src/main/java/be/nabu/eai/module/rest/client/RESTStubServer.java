@@ -0,0 +1,346 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package be.nabu.eai.module.rest.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.security.Principal;
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import be.nabu.libs.http.api.HTTPRequest;
+import be.nabu.libs.http.api.HTTPResponse;
+import be.nabu.libs.http.api.client.HTTPClient;
+import be.nabu.libs.resources.api.ReadableResource;
+import be.nabu.libs.resources.api.Resource;
+import be.nabu.libs.resources.api.ResourceContainer;
+import be.nabu.utils.io.IOUtils;
+import be.nabu.utils.mime.impl.MimeHeader;
+
+/**
+ * Serves the responses recorded by the {@link RESTStubRecorder} from an http server on the loopback interface.
+ * The latency and throughput of the server can be shaped so integrations can be load tested offline and reproducibly.
+ */
+public class RESTStubServer implements Closeable {
+
+	public enum Mode {
+		// send the requests to the actual server and record the responses
+		RECORD,
+		// send the requests to a local server that replays the recorded responses
+		REPLAY
+	}
+	
+	private static Logger logger = LoggerFactory.getLogger(RESTStubServer.class);
+	private static AtomicInteger threadCounter = new AtomicInteger();
+	
+	private final Settings settings;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	// the recorded exchanges per method and target, then per content hash
+	private final Map<String, Map<String, RESTStubExchange>> exchanges = new LinkedHashMap<String, Map<String, RESTStubExchange>>();
+	private final AtomicLong served = new AtomicLong(), missed = new AtomicLong();
+
+	public RESTStubServer(ResourceContainer<?> directory, Settings settings) throws IOException {
+		this.settings = settings;
+		if (directory != null) {
+			for (Resource child : directory) {
+				if (child instanceof ReadableResource && child.getName().startsWith(RESTStubExchange.PREFIX) && child.getName().endsWith(".xml")) {
+					InputStream input = IOUtils.toInputStream(((ReadableResource) child).getReadable());
+					try {
+						add(RESTStubExchange.unmarshal(input));
+					}
+					catch (IOException e) {
+						logger.warn("Could not load recording: " + child.getName(), e);
+					}
+					finally {
+						input.close();
+					}
+				}
+			}
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					respond(exchange);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				finally {
+					exchange.close();
+				}
+			}
+		});
+		executor = Executors.newFixedThreadPool(settings.getThreads(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "rest-client-stub-" + threadCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+	
+	public void add(RESTStubExchange exchange) {
+		synchronized(exchanges) {
+			String key = exchange.getMethod().toUpperCase() + " " + exchange.getTarget();
+			Map<String, RESTStubExchange> variants = exchanges.get(key);
+			if (variants == null) {
+				variants = new LinkedHashMap<String, RESTStubExchange>();
+				exchanges.put(key, variants);
+			}
+			variants.put(exchange.getContentHash() == null ? "" : exchange.getContentHash(), exchange);
+		}
+	}
+	
+	/**
+	 * Finds the recording for the request, a request with different content is a miss
+	 * A recording without content hash was made for content that could not be read again (e.g. a stream), it matches any content.
+	 */
+	public RESTStubExchange find(String method, String target, String contentHash) {
+		synchronized(exchanges) {
+			Map<String, RESTStubExchange> variants = exchanges.get(method.toUpperCase() + " " + RESTStubExchange.redact(target, settings.getSecretParameter()));
+			if (variants == null || variants.isEmpty()) {
+				return null;
+			}
+			RESTStubExchange exchange = variants.get(contentHash == null ? "" : contentHash);
+			return exchange == null ? variants.get("") : exchange;
+		}
+	}
+	
+	private void respond(HttpExchange exchange) throws IOException, InterruptedException {
+		byte [] content = read(exchange);
+		String method = exchange.getRequestMethod();
+		String target = exchange.getRequestURI().toString();
+		RESTStubExchange recorded = find(method, target, content.length == 0 ? null : RESTStubExchange.hash(content));
+		if (recorded == null) {
+			missed.incrementAndGet();
+			byte [] message = ("No recording for: " + method + " " + target).getBytes(Charset.forName("UTF-8"));
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+			exchange.sendResponseHeaders(404, message.length);
+			exchange.getResponseBody().write(message);
+			return;
+		}
+		served.incrementAndGet();
+		long delay = settings.getLatency();
+		if (settings.getLatencyJitter() > 0) {
+			delay += ThreadLocalRandom.current().nextLong(settings.getLatencyJitter() + 1);
+		}
+		if (settings.isRecordedLatency()) {
+			delay += recorded.getDuration();
+		}
+		if (delay > 0) {
+			Thread.sleep(delay);
+		}
+		for (RESTStubExchange.RecordedHeader header : recorded.getHeaders()) {
+			// these are determined by the server, the content encoding is dropped because the content was recorded decoded (older recordings may still have it)
+			if (!header.getName().equalsIgnoreCase("Content-Length") && !header.getName().equalsIgnoreCase("Transfer-Encoding") && !header.getName().equalsIgnoreCase("Connection")
+					&& !header.getName().equalsIgnoreCase("Content-Encoding")) {
+				exchange.getResponseHeaders().add(header.getName(), header.getValue());
+			}
+		}
+		byte [] response = recorded.getContent();
+		boolean empty = response == null || response.length == 0 || method.equalsIgnoreCase("HEAD") || recorded.getCode() == 204 || recorded.getCode() == 304;
+		exchange.sendResponseHeaders(recorded.getCode(), empty ? -1 : response.length);
+		if (!empty) {
+			write(exchange.getResponseBody(), response);
+		}
+	}
+	
+	// the request content as it was sent before any content encoding was applied
+	private static byte [] read(HttpExchange exchange) throws IOException {
+		InputStream input = exchange.getRequestBody();
+		List<String> encoding = exchange.getRequestHeaders().get("Content-Encoding");
+		if (encoding != null && encoding.contains("gzip")) {
+			input = new GZIPInputStream(input);
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			byte [] bytes = new byte[8192];
+			int read;
+			while ((read = input.read(bytes)) >= 0) {
+				output.write(bytes, 0, read);
+			}
+		}
+		finally {
+			input.close();
+		}
+		return output.toByteArray();
+	}
+	
+	private void write(OutputStream output, byte [] content) throws IOException, InterruptedException {
+		long bandwidth = settings.getBandwidth();
+		if (bandwidth <= 0) {
+			output.write(content);
+			return;
+		}
+		// write in small chunks and wait whenever we are ahead of the bandwidth
+		int chunk = (int) Math.max(512, Math.min(8192, bandwidth / 20));
+		long started = System.nanoTime();
+		for (int offset = 0; offset < content.length; offset += chunk) {
+			int length = Math.min(chunk, content.length - offset);
+			output.write(content, offset, length);
+			output.flush();
+			long ahead = ((offset + length) * 1000000000l / bandwidth) - (System.nanoTime() - started);
+			if (ahead > 0) {
+				Thread.sleep(ahead / 1000000, (int) (ahead % 1000000));
+			}
+		}
+	}
+	
+	/**
+	 * Wraps the client so it sends the requests to this server instead of the actual host
+	 */
+	public HTTPClient wrap(final HTTPClient client) {
+		return new HTTPClient() {
+			@Override
+			public HTTPResponse execute(HTTPRequest request, Principal principal, boolean secure, boolean followRedirects) throws IOException, ParseException {
+				request.getContent().removeHeader("Host");
+				request.getContent().setHeader(new MimeHeader("Host", getHost()));
+				return RESTStubServer.execute(client, request, principal, false, followRedirects);
+			}
+			public void close() throws IOException {
+				if (client instanceof Closeable) {
+					((Closeable) client).close();
+				}
+			}
+		};
+	}
+	
+	// rethrows whatever the client throws within the exceptions we are allowed to throw
+	static HTTPResponse execute(HTTPClient client, HTTPRequest request, Principal principal, boolean secure, boolean followRedirects) throws IOException, ParseException {
+		try {
+			return client.execute(request, principal, secure, followRedirects);
+		}
+		catch (IOException e) {
+			throw e;
+		}
+		catch (ParseException e) {
+			throw e;
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+	
+	public String getHost() {
+		return "127.0.0.1:" + server.getAddress().getPort();
+	}
+	public Settings getSettings() {
+		return settings;
+	}
+	public int getRecordings() {
+		synchronized(exchanges) {
+			int amount = 0;
+			for (Map<String, RESTStubExchange> variants : exchanges.values()) {
+				amount += variants.size();
+			}
+			return amount;
+		}
+	}
+	// the amount of requests that were answered with a recording
+	public long getServed() {
+		return served.get();
+	}
+	// the amount of requests for which there was no recording
+	public long getMissed() {
+		return missed.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+	
+	public static class Settings {
+		private final long latency, latencyJitter, bandwidth;
+		private final boolean recordedLatency;
+		private final int threads;
+		private final String secretParameter, secretHeader;
+
+		public Settings(long latency, long latencyJitter, boolean recordedLatency, long bandwidth, int threads, String secretParameter, String secretHeader) {
+			this.latency = latency;
+			this.latencyJitter = latencyJitter;
+			this.recordedLatency = recordedLatency;
+			this.bandwidth = bandwidth;
+			this.threads = Math.max(1, threads);
+			this.secretParameter = secretParameter;
+			this.secretHeader = secretHeader;
+		}
+
+		// the fixed delay in milliseconds before a response is sent
+		public long getLatency() {
+			return latency;
+		}
+		// a random extra delay in milliseconds between 0 and this value
+		public long getLatencyJitter() {
+			return latencyJitter;
+		}
+		// whether the duration measured while recording is added to the delay
+		public boolean isRecordedLatency() {
+			return recordedLatency;
+		}
+		// the bytes per second a response is sent at, 0 is unlimited
+		public long getBandwidth() {
+			return bandwidth;
+		}
+		// the amount of requests that are handled concurrently, additional requests wait for a thread
+		public int getThreads() {
+			return threads;
+		}
+		// the query parameter that holds the api key, its value is redacted in the recordings
+		public String getSecretParameter() {
+			return secretParameter;
+		}
+		// the header that holds the api key, it is not recorded
+		public String getSecretHeader() {
+			return secretHeader;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+* Copyright (C) 2015 Alexander Verbruggen
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU Lesser General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+* GNU Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public License
+* along with this program. If not, see <https://www.gnu.org/licenses/>.
+*/
+
+
+package nabu.protocols.rest.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jws.WebParam;
+import javax.jws.WebResult;
+import javax.jws.WebService;
+
+import be.nabu.eai.module.rest.client.RESTBatchResult;
+import be.nabu.eai.module.rest.client.RESTClientArtifact;
+import be.nabu.eai.module.rest.client.RESTClientBatch;
+import be.nabu.eai.module.rest.client.RESTLoadGenerator;
+import be.nabu.eai.module.rest.client.RESTLoadReport;
+import be.nabu.eai.repository.EAIResourceRepository;
+import be.nabu.libs.artifacts.api.Artifact;
+import be.nabu.libs.services.api.ExecutionContext;
+import be.nabu.libs.services.api.ServiceException;
+import be.nabu.libs.types.ComplexContentWrapperFactory;
+import be.nabu.libs.types.api.ComplexContent;
+
+@WebService
+public class Services {
+	
+	private ExecutionContext executionContext;
+	
+	/**
+	 * Starts the rest client in the background, the returned id can be used to wait for the result
+	 */
+	@WebResult(name = "callId")
+	public String executeAsync(@WebParam(name = "restClientId") String restClientId, @WebParam(name = "input") Object input) throws ServiceException {
+		RESTClientArtifact artifact = resolve(restClientId);
+		return artifact.getAsyncCalls().register(artifact.executeAsync(executionContext, wrap(input)));
+	}
+	
+	/**
+	 * Waits for the result of an asynchronous call, without a timeout (in milliseconds) this waits until the call is done.
+	 * Once the result (or the error) has been returned, the call is forgotten.
+	 */
+	@WebResult(name = "output")
+	public Object awaitAsync(@WebParam(name = "restClientId") String restClientId, @WebParam(name = "callId") String callId, @WebParam(name = "timeout") Long timeout) throws ServiceException, InterruptedException {
+		RESTClientArtifact artifact = resolve(restClientId);
+		CompletableFuture<ComplexContent> future = artifact.getAsyncCalls().get(callId);
+		if (future == null) {
+			throw new ServiceException("REST-CLIENT-14", "No asynchronous call found for: " + callId);
+		}
+		try {
+			ComplexContent output = timeout == null ? future.get() : future.get(timeout, TimeUnit.MILLISECONDS);
+			artifact.getAsyncCalls().remove(callId);
+			return output;
+		}
+		catch (TimeoutException e) {
+			throw new ServiceException("REST-CLIENT-15", "The asynchronous call is not done yet: " + callId);
+		}
+		catch (ExecutionException e) {
+			artifact.getAsyncCalls().remove(callId);
+			if (e.getCause() instanceof ServiceException) {
+				throw (ServiceException) e.getCause();
+			}
+			throw new ServiceException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Executes the rest client for each input, the results are in the same order as the inputs and a failed call does not stop the others.
+	 * Without a concurrency, the batch concurrency of the rest client is used.
+	 */
+	@WebResult(name = "results")
+	public List<RESTBatchResult> executeBatch(@WebParam(name = "restClientId") String restClientId, @WebParam(name = "inputs") List<Object> inputs, @WebParam(name = "concurrency") Integer concurrency) throws ServiceException, InterruptedException {
+		RESTClientArtifact artifact = resolve(restClientId);
+		List<ComplexContent> contents = new ArrayList<ComplexContent>();
+		if (inputs != null) {
+			for (Object input : inputs) {
+				contents.add(wrap(input));
+			}
+		}
+		List<RESTClientBatch.Result> results = concurrency == null
+			? artifact.executeBatch(executionContext, contents)
+			: artifact.executeBatch(executionContext, contents, concurrency);
+		List<RESTBatchResult> batchResults = new ArrayList<RESTBatchResult>();
+		for (RESTClientBatch.Result result : results) {
+			batchResults.add(RESTBatchResult.of(result));
+		}
+		return batchResults;
+	}
+	
+	/**
+	 * Executes the rest client with the given input for a duration and/or amount of requests.
+	 * Without a rate every worker starts a new call as soon as the previous one is done, with a rate the calls are started at that amount per second.
+	 */
+	@WebResult(name = "report")
+	public RESTLoadReport loadTest(@WebParam(name = "restClientId") String restClientId, @WebParam(name = "input") Object input, @WebParam(name = "concurrency") Integer concurrency,
+			@WebParam(name = "duration") Long duration, @WebParam(name = "requests") Long requests, @WebParam(name = "rate") Double rate) throws ServiceException, InterruptedException {
+		RESTClientArtifact artifact = resolve(restClientId);
+		if ((duration == null || duration <= 0) && (requests == null || requests <= 0)) {
+			throw new ServiceException("REST-CLIENT-16", "A load test needs a duration or an amount of requests");
+		}
+		// every worker is a thread, we don't want a load test to be able to exhaust the server
+		if (concurrency != null && concurrency > RESTLoadGenerator.MAX_CONCURRENCY) {
+			throw new ServiceException("REST-CLIENT-17", "The concurrency of a load test can not exceed " + RESTLoadGenerator.MAX_CONCURRENCY + ": " + concurrency);
+		}
+		return new RESTLoadGenerator(artifact).run(executionContext, wrap(input), new RESTLoadGenerator.Settings(
+			concurrency == null ? 1 : concurrency,
+			duration == null ? 0 : duration,
+			requests == null ? 0 : requests,
+			rate == null ? 0 : rate
+		));
+	}
+	
+	private static RESTClientArtifact resolve(String restClientId) throws ServiceException {
+		Artifact artifact = restClientId == null ? null : EAIResourceRepository.getInstance().resolve(restClientId);
+		if (!(artifact instanceof RESTClientArtifact)) {
+			throw new ServiceException("REST-CLIENT-12", "Not a rest client: " + restClientId);
+		}
+		return (RESTClientArtifact) artifact;
+	}
+	
+	private static ComplexContent wrap(Object input) {
+		return input == null || input instanceof ComplexContent ? (ComplexContent) input : ComplexContentWrapperFactory.getInstance().getWrapper().wrap(input);
+	}
+}